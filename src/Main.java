@@ -1,4 +1,5 @@
 import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -14,26 +15,108 @@ import java.util.Date;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 public class Main {
+    // Fuzzy searches keep only this many of the best-scoring entries
+    private static final int FUZZY_RESULT_LIMIT = Math.max(1, Integer.getInteger("docfinder.search.fuzzyLimit", 1000));
+    // Content search skips files larger than this many bytes
+    private static final long CONTENT_SEARCH_MAX_SIZE = Long.getLong("docfinder.search.maxContentSize", 16L * 1024 * 1024);
+    // How many game roots are walked at once, and how long one root may take
+    private static final int GAME_SCAN_CONCURRENCY = Integer.getInteger("docfinder.games.scanConcurrency", 4);
+    private static final long GAME_SCAN_ROOT_TIMEOUT = Long.getLong("docfinder.games.rootTimeout", 60);
+    // Game scan depths: game files and project folders below a root, game-named files
+    // below a project, and Java sources below src/ and src/main/java/
+    private static final int GAME_FILE_MAX_DEPTH = 3;
+    private static final int GAME_PROJECT_MAX_DEPTH = 2;
+    private static final int GAME_FILE_SEARCH_DEPTH = 3;
+    private static final int JAVA_SRC_SEARCH_DEPTH = 3;
+    private static final int JAVA_MAIN_SEARCH_DEPTH = 5;
+    private static final int GAME_SCAN_MAX_DEPTH = GAME_PROJECT_MAX_DEPTH + 3 + JAVA_MAIN_SEARCH_DEPTH;
+    // Directories modified this close to a scan are listed again on the next one
+    private static final long GAME_CATALOG_RACY_MILLIS = 2000;
+    // Compare file contents too when deciding whether a staged game file is current
+    private static final boolean VERIFY_STAGED_CONTENT = Boolean.getBoolean("docfinder.games.verifyContent");
+    // Find entry points in compiled classes instead of sources
+    private static final boolean MAIN_CLASS_FROM_BYTECODE = "bytecode".equals(System.getProperty("docfinder.run.mainClassSource"));
+    private static final String[] DEFAULT_GAME_KEYWORDS = {
+        "game", "play", "puzzle", "arcade", "adventure", "action", "rpg", "strategy",
+        "simulation", "racing", "sports", "shooter", "platformer", "tetris", "snake",
+        "pong", "chess", "checkers", "solitaire", "poker", "blackjack", "mario",
+        "zelda", "minecraft", "doom", "quake", "sim", "tycoon", "city", "farm",
+        "defense", "tower", "match", "candy", "bird", "run", "jump", "fight",
+        "battle", "war", "quest", "dungeon", "castle", "knight", "ninja", "pirate"
+    };
+    // More inclusive than file names, since folders are named less carefully
+    private static final String[] DEFAULT_GAME_PROJECT_KEYWORDS = {
+        "game", "play", "puzzle", "arcade", "adventure", "action", "rpg", "strategy",
+        "simulation", "racing", "sports", "shooter", "platformer", "tetris", "snake",
+        "pong", "chess", "checkers", "solitaire", "poker", "blackjack", "mario",
+        "zelda", "minecraft", "doom", "quake", "sim", "tycoon", "city", "farm",
+        "defense", "tower", "match", "candy", "bird", "run", "jump", "fight",
+        "battle", "war", "quest", "dungeon", "castle", "knight", "ninja", "pirate",
+        "yooo", "fun", "entertainment", "toy", "mini", "simple", "classic"
+    };
+    private static final String[] DEFAULT_GAME_FOLDER_KEYWORDS = {"game", "play", "arcade", "entertainment"};
+    private static final String[] DEFAULT_PROJECT_FILE_KEYWORDS = {"game", "play", "main", "start", "run", "app"};
+    
     private JFrame frame;
     private JTable fileTable;
-    private DefaultTableModel tableModel;
+    private FileTableModel tableModel;
     private JLabel statusLabel;
     private Path currentPath;
     private ScheduledExecutorService scheduler;
-    private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private ScheduledFuture<?> pollingTask;
+    private DirectoryWatcher directoryWatcher;
+    private int monitorGeneration;
+    private Timer indexRebuildTimer;
     private JTextField searchField;
+    private Timer searchDebounceTimer;
+    private SwingWorker<SearchResult, Void> searchWorker;
+    private SearchResult lastSearch;
+    private JCheckBox fuzzySearchBox;
+    private JCheckBox contentSearchBox;
+    private SwingWorker<Integer, ContentSearcher.Match> contentWorker;
+    // Query of the content search that owns the view, or null for name searches
+    private String contentQuery;
     private JCheckBox recursiveSearchBox;
     private JTextField pathField;
-    private java.util.List<Object[]> allFiles;
+    private SwingWorker<LoadResult, FileEntry> loadWorker;
+    private FileNameIndex fileIndex;
+    // Stored index of the root being walked; answers name searches until the walk is done
+    private WalkIndex walkIndex;
+    private Path indexDirectory;
     private JTabbedPane tabbedPane;
     private JTable gamesTable;
-    private DefaultTableModel gamesTableModel;
+    private GamesTableModel gamesTableModel;
     private java.util.List<GameInfo> allGames;
     private Path appGamesDirectory;
+    private Path buildCacheDirectory;
+    // Main class last picked per source directory, offered first next time
+    private final java.util.Map<Path, String> chosenMainClasses = new java.util.concurrent.ConcurrentHashMap<>();
+    // Project types by directory, see detectProjectType
+    private final java.util.Map<Path, ProjectTypeRecord> projectTypes = new java.util.concurrent.ConcurrentHashMap<>();
+    private GameCatalog gameCatalog = GameCatalog.empty();
+    // Compiled keyword sets used to recognise games, game projects and game folders
+    private KeywordMatcher gameKeywords;
+    private KeywordMatcher gameProjectKeywords;
+    private KeywordMatcher gameFolderKeywords;
+    private KeywordMatcher projectFileKeywords;
+    private long gameKeywordsFingerprint;
+    private Path gameCatalogFile;
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
@@ -57,22 +140,21 @@ public class Main {
             System.err.println("Could not create app games directory: " + e.getMessage());
         }
         
+        gameCatalogFile = currentPath.resolve("app").resolve("games.catalog");
+        buildCacheDirectory = currentPath.resolve("app").resolve("build-cache");
+        indexDirectory = currentPath.resolve("app").resolve("index");
+        loadGameKeywords();
+        
         createComponents();
         setupLayout();
         loadFiles();
-        startActivityMonitor();
+        loadGameCatalog();
         
         frame.setVisible(true);
     }
 
     private void createComponents() {
-        String[] columnNames = {"Name", "Type", "Size", "Last Modified", "Status"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new FileTableModel(this::formatFileSize);
         
         fileTable = new JTable(tableModel);
         fileTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -84,11 +166,23 @@ public class Main {
         
         searchField = new JTextField(20);
         searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
-            public void changedUpdate(javax.swing.event.DocumentEvent e) { filterFiles(); }
-            public void removeUpdate(javax.swing.event.DocumentEvent e) { filterFiles(); }
-            public void insertUpdate(javax.swing.event.DocumentEvent e) { filterFiles(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { scheduleSearch(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { scheduleSearch(); }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { scheduleSearch(); }
         });
         
+        // Keystrokes restart the timer; the search runs once typing pauses
+        searchDebounceTimer = new Timer(150, e -> runSearch());
+        searchDebounceTimer.setRepeats(false);
+        
+        fuzzySearchBox = new JCheckBox("Fuzzy");
+        fuzzySearchBox.setToolTipText("Rank subsequence matches, best first");
+        fuzzySearchBox.addActionListener(e -> runSearch());
+        
+        contentSearchBox = new JCheckBox("Contents");
+        contentSearchBox.setToolTipText("Find text inside the listed text files");
+        contentSearchBox.addActionListener(e -> runSearch());
+        
         recursiveSearchBox = new JCheckBox("Search subdirectories");
         recursiveSearchBox.addActionListener(e -> loadFiles());
         
@@ -98,12 +192,7 @@ public class Main {
         
         // Initialize games table
         String[] gamesColumnNames = {"Game Name", "Type", "Status", "Description", "Path"};
-        gamesTableModel = new DefaultTableModel(gamesColumnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        gamesTableModel = new GamesTableModel(gamesColumnNames);
         
         gamesTable = new JTable(gamesTableModel);
         gamesTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -122,7 +211,6 @@ public class Main {
             }
         });
         
-        allFiles = new ArrayList<>();
         allGames = new ArrayList<>();
         statusLabel = new JLabel("Ready - Monitoring: " + currentPath.toString());
     }
@@ -155,6 +243,7 @@ public class Main {
         JButton openBtn = new JButton("Open");
         JButton runBtn = new JButton("Run");
         JButton deleteBtn = new JButton("Delete File");
+        JButton copyBtn = new JButton("Copy To...");
         JButton editBtn = new JButton("Edit File");
         JButton addFileBtn = new JButton("Add File");
         JButton addFolderBtn = new JButton("Add Folder");
@@ -165,6 +254,7 @@ public class Main {
         openBtn.addActionListener(e -> openSelectedItem());
         runBtn.addActionListener(e -> runProject());
         deleteBtn.addActionListener(e -> deleteSelectedFile());
+        copyBtn.addActionListener(e -> copySelectedItem());
         editBtn.addActionListener(e -> editSelectedFile());
         addFileBtn.addActionListener(e -> createNewFile());
         addFolderBtn.addActionListener(e -> createNewFolder());
@@ -175,6 +265,7 @@ public class Main {
         buttonPanel.add(openBtn);
         buttonPanel.add(runBtn);
         buttonPanel.add(deleteBtn);
+        buttonPanel.add(copyBtn);
         buttonPanel.add(editBtn);
         buttonPanel.add(addFileBtn);
         buttonPanel.add(addFolderBtn);
@@ -183,6 +274,8 @@ public class Main {
         JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         searchPanel.add(new JLabel("Search:"));
         searchPanel.add(searchField);
+        searchPanel.add(fuzzySearchBox);
+        searchPanel.add(contentSearchBox);
         searchPanel.add(recursiveSearchBox);
         
         JPanel pathPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
@@ -241,100 +334,672 @@ public class Main {
     }
 
     private void loadFiles() {
-        allFiles.clear();
+        // Cancel any walk still running for a previous path or mode
+        if (loadWorker != null && !loadWorker.isDone()) {
+            loadWorker.cancel(true);
+        }
+        
+        stopActivityMonitor();
+        cancelContentSearch();
+        fileIndex = null;
+        walkIndex = null;
+        
+        final Path root = currentPath;
+        final boolean recursive = recursiveSearchBox.isSelected();
+        tableModel.clear(root);
         
         try {
-            if (!Files.exists(currentPath)) {
-                Files.createDirectories(currentPath);
+            if (!Files.exists(root)) {
+                Files.createDirectories(root);
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(frame, "Error loading files: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        statusLabel.setText("Loading: " + root.toString() + "...");
+        
+        loadWorker = new SwingWorker<LoadResult, FileEntry>() {
+            // Names of every published entry, in the order the model receives them
+            private final List<String> names = new ArrayList<>();
+            // Directories to watch once the listing is complete
+            private final List<Path> directories = java.util.Collections.synchronizedList(new ArrayList<>());
+            // Per listed directory: its mtime when visited, the sum of its children's name
+            // hashes, and the resulting stamp once every child has been seen
+            private final java.util.Map<String, Long> modifiedTimes = new java.util.concurrent.ConcurrentHashMap<>();
+            private final java.util.Map<String, java.util.concurrent.atomic.LongAdder> nameSums =
+                new java.util.concurrent.ConcurrentHashMap<>();
+            private final java.util.Map<String, FileNameIndex.Stamp> stamps = new java.util.concurrent.ConcurrentHashMap<>();
+            
+            // Together, so names.get(i) is the entry the model gives id i
+            private synchronized void publishEntry(FileEntry entry) {
+                names.add(entry.getName());
+                publish(entry);
             }
             
-            if (recursiveSearchBox.isSelected()) {
-                Files.walkFileTree(currentPath, new SimpleFileVisitor<Path>() {
+            @Override
+            protected LoadResult doInBackground() throws Exception {
+                // The index stored by the last walk answers searches while this one runs,
+                // for directories whose mtime still matches; the rest are scanned
+                Path indexFile = indexDirectory.resolve(FileNameIndex.fileNameFor(root, recursive));
+                final WalkIndex walk = loadWalkIndex(indexFile, root);
+                if (walk != null) {
+                    SwingUtilities.invokeLater(() -> {
+                        if (loadWorker == this && !isCancelled()) {
+                            walkIndex = walk;
+                        }
+                    });
+                }
+                try {
+                    presume(walk, "", Files.getLastModifiedTime(root).toMillis());
+                } catch (IOException e) {
+                    // Listing the root will fail as well
+                }
+                
+                // Directories are listed in parallel; unreadable ones are skipped.
+                // The walker stats each entry once and hands the attributes over.
+                directories.add(root);
+                ParallelTreeWalker.shared().walk(root, recursive ? Integer.MAX_VALUE : 1, this::isCancelled, new ParallelTreeWalker.Visitor() {
                     @Override
-                    public FileVisitResult visitFile(Path file, java.nio.file.attribute.BasicFileAttributes attrs) throws IOException {
-                        addFileToList(file);
-                        return FileVisitResult.CONTINUE;
+                    public boolean visit(Path path, java.nio.file.attribute.BasicFileAttributes attrs, int depth) {
+                        if (TrashReaper.isTrash(path)) {
+                            // Left behind if the app exited mid-reap
+                            TrashReaper.shared().reap(path);
+                            return false;
+                        }
+                        FileEntry entry = createFileEntry(root, path, attrs, recursive);
+                        String name = entry.getName();
+                        if (attrs.isDirectory()) {
+                            if (recursive) {
+                                directories.add(path);
+                            }
+                            // Before its children are listed, so they see the verdict
+                            presume(walk, name, attrs.lastModifiedTime().toMillis());
+                        }
+                        nameSums.computeIfAbsent(FileNameIndex.directoryOf(name), key -> new java.util.concurrent.atomic.LongAdder())
+                            .add(FileNameIndex.nameHash(name));
+                        publishEntry(entry);
+                        return true;
                     }
                     
                     @Override
-                    public FileVisitResult preVisitDirectory(Path dir, java.nio.file.attribute.BasicFileAttributes attrs) throws IOException {
-                        if (!dir.equals(currentPath)) {
-                            addFileToList(dir);
+                    public void listed(Path directory) {
+                        String key = directory.equals(root) ? "" : root.relativize(directory).toString();
+                        Long modified = modifiedTimes.get(key);
+                        if (modified == null) {
+                            return;
+                        }
+                        java.util.concurrent.atomic.LongAdder sum = nameSums.get(key);
+                        FileNameIndex.Stamp stamp = new FileNameIndex.Stamp(modified, sum != null ? sum.sum() : 0);
+                        stamps.put(key, stamp);
+                        // An unchanged mtime is only a guess; the names have to agree too
+                        if (walk != null && walk.fresh.contains(key) && !stamp.equals(walk.stored.stampOf(key))) {
+                            walk.stale = true;
                         }
-                        return FileVisitResult.CONTINUE;
                     }
                 });
-            } else {
-                Files.list(currentPath).forEach(this::addFileToList);
+                
+                if (isCancelled()) {
+                    return null;
+                }
+                
+                // Name order is worked out here, so done() only has to permute the columns;
+                // the index uses the same order
+                String[] walked;
+                synchronized (this) {
+                    walked = names.toArray(new String[0]);
+                }
+                int[] order = FileTableModel.sortedOrder(walked, walked.length);
+                
+                // Same directories with the same stamps means the same names, and so the same order
+                if (walk != null && !walk.stale && walk.stored.size() == walked.length
+                        && walk.stored.hasDirectories(stamps)) {
+                    return new LoadResult(order, walk.stored);
+                }
+                List<String> sortedNames = new ArrayList<>(order.length);
+                for (int id : order) {
+                    sortedNames.add(walked[id]);
+                }
+                FileNameIndex index = FileNameIndex.build(root.toString(), sortedNames, stamps);
+                try {
+                    Files.createDirectories(indexDirectory);
+                    index.save(indexFile);
+                } catch (IOException e) {
+                    System.err.println("Could not save file index: " + e.getMessage());
+                }
+                return new LoadResult(order, index);
+            }
+            
+            private void presume(WalkIndex walk, String directory, long modified) {
+                modifiedTimes.put(directory, modified);
+                FileNameIndex.Stamp stored = walk != null ? walk.stored.stampOf(directory) : null;
+                if (stored != null && stored.modified == modified) {
+                    walk.fresh.add(directory);
+                }
             }
             
-            filterFiles();
+            @Override
+            protected void process(List<FileEntry> entries) {
+                // Chunks from a superseded walk may still be queued on the EDT
+                if (isCancelled()) {
+                    return;
+                }
+                
+                int firstId = tableModel.getEntryCount();
+                tableModel.append(entries, Main.this::isShownByCurrentSearch);
+                if (walkIndex != null) {
+                    walkIndex.track(tableModel, firstId);
+                }
+                statusLabel.setText("Loading: " + root.toString() + 
+                    " (" + tableModel.getRowCount() + "/" + tableModel.getEntryCount() + " items so far)");
+            }
             
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                
+                walkIndex = null;
+                try {
+                    // Parallel walks finish in any order, so settle on name order
+                    LoadResult result = get();
+                    if (result != null && result.order.length == tableModel.getEntryCount()) {
+                        tableModel.applyOrder(result.order);
+                        fileIndex = result.index;
+                    } else {
+                        tableModel.sortByName();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (java.util.concurrent.ExecutionException e) {
+                    tableModel.sortByName();
+                    JOptionPane.showMessageDialog(frame, "Error loading files: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+                
+                filterFiles();
+                startActivityMonitor(root, recursive, directories);
+                statusLabel.setText("Ready - Monitoring: " + root.toString() + 
+                    " (" + tableModel.getRowCount() + "/" + tableModel.getEntryCount() + " items)");
+            }
+        };
+        
+        loadWorker.execute();
+    }
+    
+    private static WalkIndex loadWalkIndex(Path indexFile, Path root) {
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try {
+            FileNameIndex stored = FileNameIndex.load(indexFile);
+            return stored.getRoot().equals(root.toString()) ? new WalkIndex(stored) : null;
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(frame, "Error loading files: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            System.err.println("Could not read file index: " + e.getMessage());
+            return null;
         }
     }
     
-    private void addFileToList(Path path) {
-        File file = path.toFile();
-        String name = file.getName();
-        String type = file.isDirectory() ? "Folder" : getFileExtension(name);
-        String size = file.isDirectory() ? "" : formatFileSize(file.length());
-        String lastModified = dateFormat.format(new Date(file.lastModified()));
-        String status = file.canRead() && file.canWrite() ? "RW" : file.canRead() ? "R" : "?";
-        String relativePath = recursiveSearchBox.isSelected() ? 
-            currentPath.relativize(path).toString() : name;
+    private FileEntry createFileEntry(Path root, Path path, java.nio.file.attribute.BasicFileAttributes attrs, boolean recursive) {
+        String name = recursive ? root.relativize(path).toString() : path.getFileName().toString();
+        
+        // Links are shown as what they point to; only they pay for a second stat
+        if (attrs.isSymbolicLink()) {
+            try {
+                attrs = Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Broken link - keep the link's own attributes
+            }
+        }
         
-        allFiles.add(new Object[]{relativePath, type, size, lastModified, status, path.toString()});
+        // R/RW status is derived by the model when the row is first shown
+        boolean folder = attrs.isDirectory();
+        return new FileEntry(name, folder, folder ? 0 : attrs.size(), attrs.lastModifiedTime().toMillis(),
+            FileTableModel.STATUS_PENDING);
     }
     
     private void filterFiles() {
-        tableModel.setRowCount(0);
-        String searchText = searchField.getText().toLowerCase().trim();
+        // Synchronous refilter for callers that just reshaped the listing
+        String query = searchField.getText().toLowerCase().trim();
+        if (contentSearchBox.isSelected() && !query.isEmpty()) {
+            // Content results can't be recomputed in place; search the new listing again
+            runContentSearch(searchField.getText().trim());
+            return;
+        }
+        cancelContentSearch();
+        contentQuery = null;
+        if (canSearchWalkIndex(query, fuzzySearchBox.isSelected())) {
+            applySearchResult(walkIndex.search(tableModel, query));
+            return;
+        }
+        applySearchResult(searchEntries(query, fuzzySearchBox.isSelected(), tableModel.getNameColumn(),
+            tableModel.getEntryCount(), tableModel.getStructureVersion(), fileIndex, lastSearch, () -> false));
+    }
+    
+    private boolean canSearchWalkIndex(String query, boolean fuzzy) {
+        return walkIndex != null && !walkIndex.stale && !fuzzy && query.length() >= 3;
+    }
+    
+    private boolean isShownByCurrentSearch(String name) {
+        // Streamed entries only show up in content results once they have been searched
+        if (contentQuery != null) {
+            return false;
+        }
+        return lastSearch == null || lastSearch.accepts(name);
+    }
+    
+    private void scheduleSearch() {
+        searchDebounceTimer.restart();
+    }
+    
+    private void runSearch() {
+        // A newer query makes any search still in flight pointless
+        if (searchWorker != null && !searchWorker.isDone()) {
+            searchWorker.cancel(true);
+        }
+        
+        final String query = searchField.getText().toLowerCase().trim();
+        if (contentSearchBox.isSelected() && !query.isEmpty()) {
+            // As typed: the content searcher does its own (ASCII-only) case folding
+            runContentSearch(searchField.getText().trim());
+            return;
+        }
+        cancelContentSearch();
+        contentQuery = null;
+        
+        final boolean fuzzy = fuzzySearchBox.isSelected();
+        if (canSearchWalkIndex(query, fuzzy)) {
+            // Cheap enough to answer right here
+            applySearchResult(walkIndex.search(tableModel, query));
+            return;
+        }
+        final String[] names = tableModel.getNameColumn();
+        final int count = tableModel.getEntryCount();
+        final int version = tableModel.getStructureVersion();
+        final FileNameIndex index = fileIndex;
+        final SearchResult previous = lastSearch;
+        
+        searchWorker = new SwingWorker<SearchResult, Void>() {
+            @Override
+            protected SearchResult doInBackground() {
+                return searchEntries(query, fuzzy, names, count, version, index, previous, this::isCancelled);
+            }
+            
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    applySearchResult(get());
+                } catch (Exception e) {
+                    // Leave the current rows in place
+                }
+            }
+        };
+        searchWorker.execute();
+    }
+    
+    private void runContentSearch(String query) {
+        if (searchWorker != null && !searchWorker.isDone()) {
+            searchWorker.cancel(true);
+        }
+        cancelContentSearch();
+        contentQuery = query;
+        lastSearch = null;
+        
+        // Only listed text files are candidates; sizes from the listing spare opening big ones
+        final int version = tableModel.getStructureVersion();
+        final int count = tableModel.getEntryCount();
+        int[] candidates = new int[count];
+        int candidateCount = 0;
+        for (int id = 0; id < count; id++) {
+            if (!tableModel.isEntryFolder(id) && tableModel.getEntrySize(id) <= CONTENT_SEARCH_MAX_SIZE
+                    && isTextFile(getFileExtension(tableModel.getEntryName(id)).toLowerCase())) {
+                candidates[candidateCount++] = id;
+            }
+        }
+        final int[] ids = java.util.Arrays.copyOf(candidates, candidateCount);
+        final Path[] files = new Path[candidateCount];
+        for (int i = 0; i < candidateCount; i++) {
+            files[i] = tableModel.getEntryPath(ids[i]);
+        }
+        
+        tableModel.showEntries(ids, 0);
+        statusLabel.setText("Searching contents of " + files.length + " files for '" + query + "'...");
+        
+        contentWorker = new SwingWorker<Integer, ContentSearcher.Match>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                return ContentSearcher.shared().search(query, files, CONTENT_SEARCH_MAX_SIZE,
+                    this::isCancelled, match -> publish(match));
+            }
+            
+            @Override
+            protected void process(List<ContentSearcher.Match> matches) {
+                // Ids from before a reshuffle would point at the wrong entries
+                if (isCancelled() || tableModel.getStructureVersion() != version) {
+                    return;
+                }
+                for (ContentSearcher.Match match : matches) {
+                    tableModel.appendToView(ids[match.file], formatMatchedLines(match));
+                }
+                statusLabel.setText("Searching contents for '" + query + "'... (" + 
+                    tableModel.getRowCount() + " files so far)");
+            }
+            
+            @Override
+            protected void done() {
+                if (isCancelled() || tableModel.getStructureVersion() != version) {
+                    return;
+                }
+                try {
+                    get();
+                    statusLabel.setText("Ready - Monitoring: " + currentPath.toString() + 
+                        " ('" + query + "' found in " + tableModel.getRowCount() + " of " + files.length + " text files)");
+                } catch (InterruptedException e) {
+                    return;
+                } catch (java.util.concurrent.ExecutionException e) {
+                    JOptionPane.showMessageDialog(frame, "Error searching files: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        contentWorker.execute();
+    }
+    
+    private void cancelContentSearch() {
+        if (contentWorker != null && !contentWorker.isDone()) {
+            contentWorker.cancel(true);
+        }
+    }
+    
+    private static String formatMatchedLines(ContentSearcher.Match match) {
+        StringBuilder note = new StringBuilder(match.lineCount == 1 ? "Line " : "Lines ");
+        for (int i = 0; i < match.lines.length; i++) {
+            if (i > 0) {
+                note.append(", ");
+            }
+            note.append(match.lines[i]);
+        }
+        if (match.lineCount > match.lines.length) {
+            note.append(" +").append(match.lineCount - match.lines.length).append(" more");
+        }
+        return note.toString();
+    }
+    
+    private static SearchResult searchEntries(String query, boolean fuzzy, String[] names, int count, int version,
+            FileNameIndex index, SearchResult previous, BooleanSupplier cancelled) {
+        if (fuzzy && !query.isEmpty()) {
+            FuzzyMatcher matcher = new FuzzyMatcher(query);
+            int[] ranked = matcher.rank(names, count, FUZZY_RESULT_LIMIT, cancelled);
+            return ranked != null ? new SearchResult(query, matcher, ranked, ranked.length, version, count) : null;
+        }
+        
+        // The index answers queries of three or more characters without a scan
+        int[] indexed = index != null && index.size() == count ? index.query(query) : null;
+        if (indexed != null) {
+            return new SearchResult(query, null, indexed, indexed.length, version, count);
+        }
+        
+        int[] ids = new int[count];
+        int found = 0;
+        if (!fuzzy && previous != null && previous.canNarrowTo(query, version, count)) {
+            // The new query extends the last one, so only its matches can still match
+            for (int i = 0; i < previous.count; i++) {
+                int id = previous.ids[i];
+                if (FileTableModel.containsIgnoreCase(names[id], query)) {
+                    ids[found++] = id;
+                }
+            }
+            for (int id = previous.entryCount; id < count; id++) {
+                if (FileTableModel.containsIgnoreCase(names[id], query)) {
+                    ids[found++] = id;
+                }
+            }
+        } else {
+            for (int id = 0; id < count; id++) {
+                if ((id & 0xFFF) == 0 && cancelled.getAsBoolean()) {
+                    return null;
+                }
+                if (query.isEmpty() || FileTableModel.containsIgnoreCase(names[id], query)) {
+                    ids[found++] = id;
+                }
+            }
+        }
+        return new SearchResult(query, null, ids, found, version, count);
+    }
+    
+    private void applySearchResult(SearchResult result) {
+        if (result == null) {
+            return;
+        }
+        if (result.structureVersion != tableModel.getStructureVersion()) {
+            // Entries were reordered or removed meanwhile; the ids no longer line up
+            runSearch();
+            return;
+        }
         
-        for (Object[] fileData : allFiles) {
-            String fileName = (String) fileData[0];
-            if (searchText.isEmpty() || fileName.toLowerCase().contains(searchText)) {
-                tableModel.addRow(new Object[]{fileData[0], fileData[1], fileData[2], fileData[3], fileData[4]});
+        // Entries appended while the search ran still need to be checked
+        int count = tableModel.getEntryCount();
+        if (count > result.entryCount) {
+            int[] ids = java.util.Arrays.copyOf(result.ids, result.count + count - result.entryCount);
+            int found = result.count;
+            for (int id = result.entryCount; id < count; id++) {
+                if (result.accepts(tableModel.getEntryName(id))) {
+                    ids[found++] = id;
+                }
             }
+            result = new SearchResult(result.query, result.matcher, ids, found, result.structureVersion, count);
         }
         
+        tableModel.showEntries(result.ids, result.count);
+        lastSearch = result;
+        
         statusLabel.setText("Ready - Monitoring: " + currentPath.toString() + 
-            " (" + tableModel.getRowCount() + "/" + allFiles.size() + " items)");
+            " (" + tableModel.getRowCount() + "/" + tableModel.getEntryCount() + " items)");
     }
 
-    private void startActivityMonitor() {
-        scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.scheduleAtFixedRate(() -> {
+    private void startActivityMonitor(Path root, boolean recursive, List<Path> directories) {
+        stopActivityMonitor();
+        final int generation = monitorGeneration;
+        
+        try {
+            directoryWatcher = new DirectoryWatcher(root, recursive,
+                (path, attrs) -> createFileEntry(root, path, attrs, recursive),
+                changes -> SwingUtilities.invokeLater(() -> applyFileChanges(generation, changes)));
+            directoryWatcher.start(directories, e -> SwingUtilities.invokeLater(() -> {
+                // Ran out of watches part-way through the tree - poll instead
+                if (generation == monitorGeneration && directoryWatcher != null) {
+                    directoryWatcher.close();
+                    directoryWatcher = null;
+                    startPollingMonitor();
+                }
+            }));
+        } catch (IOException | UnsupportedOperationException e) {
+            // Filesystem can't be watched (or ran out of watches) - poll instead
+            if (directoryWatcher != null) {
+                directoryWatcher.close();
+                directoryWatcher = null;
+            }
+            startPollingMonitor();
+        }
+    }
+    
+    private void stopActivityMonitor() {
+        monitorGeneration++;
+        if (directoryWatcher != null) {
+            directoryWatcher.close();
+            directoryWatcher = null;
+        }
+        if (pollingTask != null) {
+            pollingTask.cancel(false);
+            pollingTask = null;
+        }
+    }
+    
+    private void startPollingMonitor() {
+        if (scheduler == null) {
+            scheduler = Executors.newScheduledThreadPool(1);
+        }
+        pollingTask = scheduler.scheduleAtFixedRate(() -> {
             SwingUtilities.invokeLater(() -> {
                 updateFileStatuses();
             });
         }, 0, 2, TimeUnit.SECONDS);
     }
+    
+    private void applyFileChanges(int generation, List<DirectoryWatcher.Change> changes) {
+        if (generation != monitorGeneration) {
+            return; // Events for a listing that has since been replaced
+        }
+        
+        Path root = tableModel.getRoot();
+        java.util.Set<String> deleted = new java.util.HashSet<>();
+        java.util.Set<String> deletedFolders = new java.util.HashSet<>();
+        boolean listChanged = false;
+        
+        for (DirectoryWatcher.Change change : changes) {
+            String key = root.relativize(change.getPath()).toString();
+            int existing = tableModel.findEntry(key);
+            
+            switch (change.getKind()) {
+                case OVERFLOW:
+                    // Events were lost, so the listing can no longer be trusted
+                    loadFiles();
+                    return;
+                case DELETED:
+                    if (existing != -1) {
+                        deleted.add(key);
+                        if (tableModel.isEntryFolder(existing)) {
+                            deletedFolders.add(key + File.separator);
+                        }
+                        listChanged = true;
+                    }
+                    break;
+                case CREATED:
+                case MODIFIED:
+                    FileEntry entry = change.getEntry();
+                    if (entry == null) {
+                        break; // Gone again before it could be read
+                    }
+                    if (existing == -1) {
+                        int id = tableModel.add(entry);
+                        if (isShownByCurrentSearch(key)) {
+                            tableModel.appendToView(id, null);
+                        }
+                        listChanged = true;
+                    } else if (deleted.remove(key)) {
+                        // Deleted and re-created within the same batch
+                        tableModel.update(existing, entry);
+                    } else {
+                        tableModel.update(existing, entry);
+                        if (change.getKind() == DirectoryWatcher.Kind.MODIFIED && !entry.isFolder()) {
+                            markModified(existing, FileTableModel.STATUS_PENDING);
+                        }
+                    }
+                    break;
+            }
+        }
+        
+        if (!deleted.isEmpty()) {
+            // Only the affected rows are dropped; the table keeps its selection itself
+            tableModel.removeEntries(id -> {
+                String name = tableModel.getEntryName(id);
+                if (deleted.contains(name)) {
+                    return true;
+                }
+                for (String folder : deletedFolders) {
+                    if (name.startsWith(folder)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+        
+        if (listChanged) {
+            // Entry ids shifted, so the index is stale until it is rebuilt
+            fileIndex = null;
+            scheduleIndexRebuild();
+            if (contentQuery != null) {
+                // Content results can't be patched in place; search the new listing again
+                filterFiles();
+            } else {
+                statusLabel.setText("Ready - Monitoring: " + currentPath.toString() + 
+                    " (" + tableModel.getRowCount() + "/" + tableModel.getEntryCount() + " items)");
+            }
+        }
+    }
+    
+    private void markModified(int id, byte restoreStatus) {
+        final String name = tableModel.getEntryName(id);
+        final int generation = monitorGeneration;
+        tableModel.setEntryStatus(id, FileTableModel.STATUS_MODIFIED);
+        
+        Timer timer = new Timer(3000, e -> {
+            if (generation != monitorGeneration) {
+                return;
+            }
+            int current = tableModel.findEntry(name);
+            if (current != -1 && tableModel.getEntryStatus(current) == FileTableModel.STATUS_MODIFIED) {
+                tableModel.setEntryStatus(current, restoreStatus);
+            }
+        });
+        timer.setRepeats(false);
+        timer.start();
+    }
+    
+    private void scheduleIndexRebuild() {
+        if (indexRebuildTimer == null) {
+            // Wait for bursts of changes to settle before re-indexing
+            indexRebuildTimer = new Timer(1000, e -> rebuildIndex());
+            indexRebuildTimer.setRepeats(false);
+        }
+        indexRebuildTimer.restart();
+    }
+    
+    private void rebuildIndex() {
+        final int size = tableModel.getEntryCount();
+        final List<String> names = new ArrayList<>(size);
+        for (int id = 0; id < size; id++) {
+            names.add(tableModel.getEntryName(id));
+        }
+        final String root = currentPath.toString();
+        final int generation = monitorGeneration;
+        
+        new SwingWorker<FileNameIndex, Void>() {
+            @Override
+            protected FileNameIndex doInBackground() {
+                // Kept in memory only: without directory stamps a stored copy could never be reused
+                return FileNameIndex.build(root, names, java.util.Collections.emptyMap());
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    // Only install it if nothing changed while it was being built
+                    if (generation == monitorGeneration && fileIndex == null && tableModel.getEntryCount() == size
+                            && (indexRebuildTimer == null || !indexRebuildTimer.isRunning())) {
+                        fileIndex = get();
+                    }
+                } catch (Exception e) {
+                    // Keep using the linear scan
+                }
+            }
+        }.execute();
+    }
 
     private void updateFileStatuses() {
         try {
-            for (int i = 0; i < tableModel.getRowCount(); i++) {
-                String fileName = (String) tableModel.getValueAt(i, 0);
-                Path filePath = currentPath.resolve(fileName);
+            for (int row = 0; row < tableModel.getRowCount(); row++) {
+                int id = tableModel.getEntryId(row);
+                File file = tableModel.getEntryPath(id).toFile();
                 
-                if (Files.exists(filePath)) {
-                    File file = filePath.toFile();
-                    String newLastModified = dateFormat.format(new Date(file.lastModified()));
-                    String oldLastModified = (String) tableModel.getValueAt(i, 3);
-                    
-                    if (!newLastModified.equals(oldLastModified)) {
-                        tableModel.setValueAt(newLastModified, i, 3);
-                        tableModel.setValueAt("Modified", i, 4);
-                        
-                        final int rowIndex = i;
-                        Timer timer = new Timer(3000, e -> {
-                            if (rowIndex < tableModel.getRowCount()) {
-                                tableModel.setValueAt("RW", rowIndex, 4);
-                            }
-                        });
-                        timer.setRepeats(false);
-                        timer.start();
+                if (file.exists()) {
+                    long lastModified = file.lastModified();
+                    if (lastModified != tableModel.getEntryModified(id)) {
+                        tableModel.setEntryModified(id, lastModified);
+                        markModified(id, FileTableModel.STATUS_PENDING);
                     }
                 }
             }
@@ -361,23 +1026,8 @@ public class Main {
         
         if (result == JOptionPane.YES_OPTION) {
             try {
-                if (Files.isDirectory(filePath)) {
-                    Files.walkFileTree(filePath, new SimpleFileVisitor<Path>() {
-                        @Override
-                        public FileVisitResult visitFile(Path file, java.nio.file.attribute.BasicFileAttributes attrs) throws IOException {
-                            Files.delete(file);
-                            return FileVisitResult.CONTINUE;
-                        }
-                        
-                        @Override
-                        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                            Files.delete(dir);
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
-                } else {
-                    Files.delete(filePath);
-                }
+                // Folders move to the trash and are reaped in the background
+                TrashReaper.shared().delete(filePath);
                 
                 loadFiles();
                 JOptionPane.showMessageDialog(frame, "'" + fileName + "' deleted successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -432,17 +1082,115 @@ public class Main {
         }
     }
 
-    private void openSelectedItem() {
+    private void copySelectedItem() {
         int selectedRow = fileTable.getSelectedRow();
         if (selectedRow == -1) {
-            JOptionPane.showMessageDialog(frame, "Please select a file or folder to open.", "No Selection", JOptionPane.WARNING_MESSAGE);
+            JOptionPane.showMessageDialog(frame, "Please select a file or folder to copy.", "No Selection", JOptionPane.WARNING_MESSAGE);
             return;
         }
         
-        String fileName = (String) tableModel.getValueAt(selectedRow, 0);
-        String type = (String) tableModel.getValueAt(selectedRow, 1);
-        Path selectedPath = getSelectedFilePath(selectedRow);
-        File selectedFile = selectedPath.toFile();
+        Path source = getSelectedFilePath(selectedRow);
+        JFileChooser chooser = new JFileChooser(currentPath.toFile());
+        chooser.setDialogTitle("Copy '" + source.getFileName() + "' To");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showDialog(frame, "Copy Here") != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        
+        Path target = chooser.getSelectedFile().toPath().resolve(source.getFileName().toString());
+        Path absoluteSource = source.toAbsolutePath().normalize();
+        if (target.toAbsolutePath().normalize().startsWith(absoluteSource)) {
+            JOptionPane.showMessageDialog(frame, "Cannot copy an item into itself.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            int result = JOptionPane.showConfirmDialog(frame,
+                "'" + target + "' already exists. Overwrite matching files?",
+                "Confirm Copy",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE);
+            if (result != JOptionPane.YES_OPTION) {
+                return;
+            }
+        }
+        
+        ProgressMonitor monitor = new ProgressMonitor(frame, "Copying " + source.getFileName() + "...", "", 0, 100);
+        monitor.setMillisToDecideToPopup(300);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        
+        SwingWorker<List<CopyEngine.Failure>, String> worker = new SwingWorker<List<CopyEngine.Failure>, String>() {
+            @Override
+            protected List<CopyEngine.Failure> doInBackground() throws Exception {
+                CopyEngine.Progress progress = (bytes, totalBytes, files, totalFiles) -> {
+                    // Files can grow while being copied, so the ratio may pass 100
+                    int percent = totalBytes > 0 ? (int) (bytes * 100 / totalBytes) : files * 100 / Math.max(totalFiles, 1);
+                    setProgress(Math.max(0, Math.min(100, percent)));
+                    publish(files + "/" + totalFiles + " files, " + formatFileSize(bytes) + " of " + formatFileSize(totalBytes));
+                };
+                if (Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS)) {
+                    return CopyEngine.shared().copyTree(source, target, progress, cancelled::get);
+                }
+                Files.createDirectories(target.getParent());
+                return CopyEngine.shared().copy(source.getParent(), target.getParent(), List.of(source.getFileName()),
+                    new long[] {Files.size(source)}, progress, cancelled::get);
+            }
+            
+            @Override
+            protected void process(List<String> chunks) {
+                monitor.setNote(chunks.get(chunks.size() - 1));
+                if (monitor.isCanceled()) {
+                    cancelled.set(true);
+                }
+            }
+            
+            @Override
+            protected void done() {
+                monitor.close();
+                try {
+                    List<CopyEngine.Failure> failures = get();
+                    if (target.getParent() != null && target.getParent().equals(currentPath)) {
+                        loadFiles();
+                    }
+                    if (!failures.isEmpty()) {
+                        StringBuilder message = new StringBuilder(failures.size() + " item(s) could not be copied:");
+                        for (int i = 0; i < Math.min(failures.size(), 10); i++) {
+                            CopyEngine.Failure failure = failures.get(i);
+                            message.append("\n").append(failure.getPath()).append(": ").append(failure.getError().getMessage());
+                        }
+                        if (failures.size() > 10) {
+                            message.append("\n...");
+                        }
+                        JOptionPane.showMessageDialog(frame, message.toString(), "Copy Incomplete", JOptionPane.WARNING_MESSAGE);
+                    } else if (cancelled.get()) {
+                        statusLabel.setText("Copy of '" + source.getFileName() + "' cancelled");
+                    } else {
+                        statusLabel.setText("Copied '" + source.getFileName() + "' to " + target.getParent());
+                    }
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(frame, "Error copying item: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                monitor.setProgress((Integer) e.getNewValue());
+            }
+        });
+        worker.execute();
+    }
+
+    private void openSelectedItem() {
+        int selectedRow = fileTable.getSelectedRow();
+        if (selectedRow == -1) {
+            JOptionPane.showMessageDialog(frame, "Please select a file or folder to open.", "No Selection", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        String fileName = (String) tableModel.getValueAt(selectedRow, 0);
+        String type = (String) tableModel.getValueAt(selectedRow, 1);
+        Path selectedPath = getSelectedFilePath(selectedRow);
+        File selectedFile = selectedPath.toFile();
         
         try {
             if ("Folder".equals(type)) {
@@ -606,15 +1354,9 @@ public class Main {
     }
     
     private Path getSelectedFilePath(int selectedRow) {
-        String displayName = (String) tableModel.getValueAt(selectedRow, 0);
-        
-        for (Object[] fileData : allFiles) {
-            if (displayName.equals(fileData[0])) {
-                return Paths.get((String) fileData[5]);
-            }
-        }
-        
-        return currentPath.resolve(displayName);
+        // Rows map straight to entry ids, so equal display names can't be confused
+        int id = tableModel.getEntryId(fileTable.convertRowIndexToModel(selectedRow));
+        return tableModel.getEntryPath(id);
     }
 
     private void navigateUp() {
@@ -735,67 +1477,152 @@ public class Main {
         }
     }
     
+    // Memoized until one of the directories it looked at changes
     private ProjectType detectProjectType(Path path) {
+        Path directory = path.toAbsolutePath().normalize();
+        ProjectTypeRecord record = projectTypes.get(directory);
+        if (record != null && record.isCurrent()) {
+            return record.type;
+        }
+        
+        java.util.Map<Path, DirectoryListing> listings = new java.util.HashMap<>();
+        ProjectType type;
         try {
-            if (Files.exists(path.resolve("pom.xml"))) {
-                return ProjectType.MAVEN;
-            }
-            if (Files.exists(path.resolve("build.gradle")) || Files.exists(path.resolve("build.gradle.kts"))) {
-                return ProjectType.GRADLE;
-            }
-            if (Files.exists(path.resolve("package.json"))) {
-                return ProjectType.NODEJS;
-            }
-            if (Files.exists(path.resolve("requirements.txt")) || Files.exists(path.resolve("main.py")) || 
-                Files.exists(path.resolve("app.py")) || Files.exists(path.resolve("manage.py"))) {
-                return ProjectType.PYTHON;
-            }
-            if (Files.exists(path.resolve("Cargo.toml"))) {
-                return ProjectType.RUST;
-            }
-            if (Files.exists(path.resolve("go.mod"))) {
-                return ProjectType.GO;
-            }
-            if (Files.exists(path.resolve("Makefile")) || Files.exists(path.resolve("makefile"))) {
-                return ProjectType.C_CPP;
-            }
-            if (hasJavaFiles(path)) {
-                return ProjectType.JAVA_PLAIN;
-            }
-            if (Files.exists(path.resolve("src")) && Files.isDirectory(path.resolve("src"))) {
-                ProjectType srcType = detectProjectType(path.resolve("src"));
-                if (srcType != ProjectType.UNKNOWN) {
-                    return srcType;
-                }
+            type = detectProjectType(directory, listings);
+        } catch (IOException e) {
+            return ProjectType.UNKNOWN;
+        }
+        
+        // Same window as the game catalog: a directory this fresh may change again unnoticed
+        long racy = System.currentTimeMillis() - GAME_CATALOG_RACY_MILLIS;
+        java.util.Map<Path, Long> modified = new java.util.HashMap<>();
+        for (java.util.Map.Entry<Path, DirectoryListing> listing : listings.entrySet()) {
+            if (listing.getValue().modified >= racy) {
+                return type;
             }
-        } catch (Exception e) {
-            // Ignore and return unknown
+            modified.put(listing.getKey(), listing.getValue().modified);
+        }
+        projectTypes.put(directory, new ProjectTypeRecord(type, modified));
+        return type;
+    }
+    
+    // Every marker is looked up in one listing of the directory instead of probing for each
+    private ProjectType detectProjectType(Path path, java.util.Map<Path, DirectoryListing> listings) throws IOException {
+        java.util.Set<String> names = listDirectory(path, listings).names;
+        if (names.contains("pom.xml")) {
+            return ProjectType.MAVEN;
+        }
+        if (names.contains("build.gradle") || names.contains("build.gradle.kts")) {
+            return ProjectType.GRADLE;
+        }
+        if (names.contains("package.json")) {
+            return ProjectType.NODEJS;
+        }
+        if (names.contains("requirements.txt") || names.contains("main.py") || 
+            names.contains("app.py") || names.contains("manage.py")) {
+            return ProjectType.PYTHON;
+        }
+        if (names.contains("Cargo.toml")) {
+            return ProjectType.RUST;
+        }
+        if (names.contains("go.mod")) {
+            return ProjectType.GO;
+        }
+        if (names.contains("Makefile") || names.contains("makefile")) {
+            return ProjectType.C_CPP;
+        }
+        
+        Path srcDir = path.resolve("src");
+        boolean hasSrc = names.contains("src") && Files.isDirectory(srcDir);
+        // Java files at the top level, in src/ or in src/main/java/
+        if (containsJavaFiles(path, 1, listings)
+                || (hasSrc && (containsJavaFiles(srcDir, 3, listings)
+                    || containsJavaFiles(srcDir.resolve("main").resolve("java"), 5, listings)))) {
+            return ProjectType.JAVA_PLAIN;
+        }
+        if (hasSrc) {
+            return detectProjectType(srcDir, listings);
         }
         return ProjectType.UNKNOWN;
     }
     
-    private boolean hasJavaFiles(Path path) {
+    // Whether a .java file sits at most depth levels below directory
+    private boolean containsJavaFiles(Path directory, int depth, java.util.Map<Path, DirectoryListing> listings) {
+        java.util.Set<String> names;
         try {
-            // Check root directory
-            if (Files.walk(path, 1).anyMatch(p -> p.toString().endsWith(".java"))) {
+            names = listDirectory(directory, listings).names;
+        } catch (IOException e) {
+            return false;
+        }
+        for (String name : names) {
+            if (name.endsWith(".java")) {
                 return true;
             }
-            
-            // Check src/ directory
-            Path srcDir = path.resolve("src");
-            if (Files.exists(srcDir) && Files.walk(srcDir, 3).anyMatch(p -> p.toString().endsWith(".java"))) {
-                return true;
+        }
+        if (depth > 1) {
+            for (String name : names) {
+                Path child = directory.resolve(name);
+                if (TrashReaper.isTrash(child)) {
+                    continue;
+                }
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS) && containsJavaFiles(child, depth - 1, listings)) {
+                    return true;
+                }
             }
-            
-            // Check src/main/java/ directory
-            Path mavenSrc = path.resolve("src/main/java");
-            if (Files.exists(mavenSrc) && Files.walk(mavenSrc, 5).anyMatch(p -> p.toString().endsWith(".java"))) {
-                return true;
+        }
+        return false;
+    }
+    
+    private DirectoryListing listDirectory(Path directory, java.util.Map<Path, DirectoryListing> listings) throws IOException {
+        DirectoryListing listing = listings.get(directory);
+        if (listing == null) {
+            // The mtime is read first, so a change during the listing invalidates it
+            long modified = Files.getLastModifiedTime(directory).toMillis();
+            java.util.Set<String> names = new java.util.HashSet<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    names.add(entry.getFileName().toString());
+                }
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
             }
-            
-            return false;
-        } catch (IOException e) {
-            return false;
+            listing = new DirectoryListing(modified, names);
+            listings.put(directory, listing);
+        }
+        return listing;
+    }
+    
+    private static class DirectoryListing {
+        final long modified;
+        final java.util.Set<String> names;
+        
+        DirectoryListing(long modified, java.util.Set<String> names) {
+            this.modified = modified;
+            this.names = names;
+        }
+    }
+    
+    private static class ProjectTypeRecord {
+        final ProjectType type;
+        // Every directory the detection listed, with its mtime at the time
+        final java.util.Map<Path, Long> directories;
+        
+        ProjectTypeRecord(ProjectType type, java.util.Map<Path, Long> directories) {
+            this.type = type;
+            this.directories = directories;
+        }
+        
+        boolean isCurrent() {
+            for (java.util.Map.Entry<Path, Long> directory : directories.entrySet()) {
+                try {
+                    if (Files.getLastModifiedTime(directory.getKey()).toMillis() != directory.getValue()) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
     
@@ -870,10 +1697,16 @@ public class Main {
         
         // Create a new window to show the process output
         JFrame outputFrame = new JFrame("Running: " + finalCommand);
-        JTextArea outputArea = new JTextArea(20, 80);
-        outputArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
-        outputArea.setEditable(false);
-        JScrollPane scrollPane = new JScrollPane(outputArea);
+        ConsoleView console = new ConsoleView();
+        JScrollPane scrollPane = new JScrollPane(console);
+        // Closing the window ends the process and releases the buffered output
+        outputFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        outputFrame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                console.close();
+            }
+        });
         
         outputFrame.add(scrollPane);
         outputFrame.setSize(800, 400);
@@ -881,7 +1714,7 @@ public class Main {
         outputFrame.setVisible(true);
         
         // Execute the command in a separate thread
-        SwingWorker<Void, String> worker = new SwingWorker<Void, String>() {
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() throws Exception {
                 try {
@@ -902,31 +1735,18 @@ public class Main {
                     pb.redirectErrorStream(true);
                     
                     Process process = pb.start();
+                    console.attach(process);
                     
-                    try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                            new java.io.InputStreamReader(process.getInputStream()))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            publish(line);
-                        }
-                    }
+                    console.pump(process.getInputStream());
                     
                     int exitCode = process.waitFor();
-                    publish("\n--- Process finished with exit code: " + exitCode + " ---");
+                    console.appendLine("\n--- Process finished with exit code: " + exitCode + " ---");
                     
                 } catch (Exception e) {
-                    publish("Error: " + e.getMessage());
+                    console.appendLine("Error: " + e.getMessage());
                 }
                 return null;
             }
-            
-            @Override
-            protected void process(List<String> chunks) {
-                for (String line : chunks) {
-                    outputArea.append(line + "\n");
-                    outputArea.setCaretPosition(outputArea.getDocument().getLength());
-                }
-            }
         };
         
         worker.execute();
@@ -935,17 +1755,23 @@ public class Main {
     private void executeJavaCompileAndRun(Path projectPath, boolean runMain) throws IOException {
         // Create a new window to show the process output
         JFrame outputFrame = new JFrame("Java Compile & Run");
-        JTextArea outputArea = new JTextArea(20, 80);
-        outputArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
-        outputArea.setEditable(false);
-        JScrollPane scrollPane = new JScrollPane(outputArea);
+        ConsoleView console = new ConsoleView();
+        JScrollPane scrollPane = new JScrollPane(console);
+        // Closing the window ends the process and releases the buffered output
+        outputFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        outputFrame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                console.close();
+            }
+        });
         
         outputFrame.add(scrollPane);
         outputFrame.setSize(800, 400);
         outputFrame.setLocationRelativeTo(frame);
         outputFrame.setVisible(true);
         
-        SwingWorker<Void, String> worker = new SwingWorker<Void, String>() {
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() throws Exception {
                 try {
@@ -955,7 +1781,7 @@ public class Main {
                     Path sourcePath = projectPath;
                     
                     // Check common Java project structures
-                    publish("Searching for Java files in project...");
+                    console.appendLine("Searching for Java files in project...");
                     
                     // 1. Root directory
                     searchPaths.add(projectPath);
@@ -984,127 +1810,198 @@ public class Main {
                     // Search for Java files recursively in all paths
                     for (Path searchPath : searchPaths) {
                         if (Files.exists(searchPath)) {
-                            publish("Searching in: " + projectPath.relativize(searchPath));
-                            Files.walk(searchPath)
-                                .filter(p -> p.toString().endsWith(".java"))
-                                .forEach(javaFiles::add);
+                            console.appendLine("Searching in: " + projectPath.relativize(searchPath));
+                            javaFiles.addAll(TrashReaper.findFiles(searchPath, Integer.MAX_VALUE, ".java"));
                         }
                     }
                     
                     if (javaFiles.isEmpty()) {
-                        publish("No Java files found in any of the searched directories.");
-                        publish("Searched locations:");
-                        publish("  - Root directory");
-                        publish("  - src/");
-                        publish("  - src/main/java/");
-                        publish("  - src/java/");
+                        console.appendLine("No Java files found in any of the searched directories.");
+                        console.appendLine("Searched locations:");
+                        console.appendLine("  - Root directory");
+                        console.appendLine("  - src/");
+                        console.appendLine("  - src/main/java/");
+                        console.appendLine("  - src/java/");
                         return null;
                     }
                     
-                    publish("Found " + javaFiles.size() + " Java file(s):");
+                    console.appendLine("Found " + javaFiles.size() + " Java file(s):");
                     for (Path javaFile : javaFiles) {
-                        publish("  " + projectPath.relativize(javaFile));
+                        console.appendLine("  " + projectPath.relativize(javaFile));
                     }
-                    publish("");
+                    console.appendLine("");
                     
                     // Compile all Java files
-                    publish("Compiling Java files from: " + projectPath.relativize(sourcePath));
-                    List<String> compileCommand = new ArrayList<>();
-                    compileCommand.add("javac");
-                    compileCommand.add("-cp");
-                    compileCommand.add(".");
-                    compileCommand.add("-d");
-                    compileCommand.add(".");
-                    
-                    // Add all Java files with their relative paths from the source directory
-                    for (Path javaFile : javaFiles) {
-                        if (javaFile.startsWith(sourcePath)) {
-                            Path relativePath = sourcePath.relativize(javaFile);
-                            compileCommand.add(relativePath.toString());
-                        } else {
-                            compileCommand.add(javaFile.toString());
-                        }
-                    }
-                    
-                    ProcessBuilder compilePb = new ProcessBuilder(compileCommand);
-                    compilePb.directory(sourcePath.toFile());
-                    compilePb.redirectErrorStream(true);
-                    
-                    Process compileProcess = compilePb.start();
-                    
-                    try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                            new java.io.InputStreamReader(compileProcess.getInputStream()))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            publish(line);
-                        }
+                    console.appendLine("Compiling Java files from: " + projectPath.relativize(sourcePath));
+                    int compileExitCode;
+                    if (InProcessCompiler.shared().isAvailable()) {
+                        long started = System.currentTimeMillis();
+                        compileExitCode = compileIncrementally(sourcePath, javaFiles, console::appendLine) ? 0 : 1;
+                        console.appendLine("Compiled in " + (System.currentTimeMillis() - started) + " ms");
+                    } else {
+                        compileExitCode = compileWithJavac(sourcePath, javaFiles, console::appendLine);
                     }
-                    
-                    int compileExitCode = compileProcess.waitFor();
-                    
                     if (compileExitCode == 0) {
-                        publish("Compilation successful!");
+                        console.appendLine("Compilation successful!");
                         
                         if (runMain) {
-                            publish("");
+                            console.appendLine("");
                             
                             // Try to find and run Main class
-                            String mainClass = findMainClass(sourcePath, javaFiles);
+                            List<String> mainClasses = findMainClasses(sourcePath, javaFiles);
+                            String mainClass = chooseMainClass(sourcePath, mainClasses);
                             if (mainClass != null) {
-                                publish("Running " + mainClass + "...");
-                                publish("--- Output ---");
+                                console.appendLine("Running " + mainClass + "...");
+                                console.appendLine("--- Output ---");
                                 
                                 ProcessBuilder runPb = new ProcessBuilder("java", "-cp", ".", mainClass);
                                 runPb.directory(sourcePath.toFile());
                                 runPb.redirectErrorStream(true);
                                 
                                 Process runProcess = runPb.start();
+                                console.attach(runProcess);
                                 
-                                try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                                        new java.io.InputStreamReader(runProcess.getInputStream()))) {
-                                    String line;
-                                    while ((line = reader.readLine()) != null) {
-                                        publish(line);
-                                    }
-                                }
+                                console.pump(runProcess.getInputStream());
                                 
                                 int runExitCode = runProcess.waitFor();
-                                publish("--- Program finished with exit code: " + runExitCode + " ---");
+                                console.appendLine("--- Program finished with exit code: " + runExitCode + " ---");
+                            } else if (mainClasses.isEmpty()) {
+                                console.appendLine("No main method found in any Java file.");
                             } else {
-                                publish("No main method found in any Java file.");
+                                console.appendLine("No main class selected.");
                             }
                         }
                     } else {
-                        publish("Compilation failed with exit code: " + compileExitCode);
+                        console.appendLine("Compilation failed with exit code: " + compileExitCode);
                     }
                     
                 } catch (Exception e) {
-                    publish("Error: " + e.getMessage());
+                    console.appendLine("Error: " + e.getMessage());
                 }
                 return null;
             }
+        };
+        
+        worker.execute();
+    }
+    
+    // Compiles only the sources that changed since the last successful build and the ones
+    // that refer to their types; unchanged projects aren't compiled at all
+    private boolean compileIncrementally(Path sourcePath, List<Path> javaFiles, Consumer<String> output) throws IOException {
+        Path cacheFile = buildCacheDirectory.resolve(BuildCache.fileNameFor(sourcePath));
+        BuildCache cache = BuildCache.open(cacheFile, BuildCache.configurationFor(sourcePath));
+        BuildCache.Plan plan = cache.plan(javaFiles, sourcePath);
+        if (plan.isUpToDate()) {
+            output.accept("All classes are up to date.");
+            return true;
+        }
+        
+        if (plan.compile.isEmpty()) {
+            output.accept("Removing classes of deleted sources.");
+        } else {
+            output.accept("Recompiling " + plan.compile.size() + " file(s): " + plan.changed + " changed, " + 
+                (plan.compile.size() - plan.changed) + " dependent");
+        }
+        // Classes that are gone from a source must not linger and be picked up by others
+        for (Path classFile : plan.staleClasses) {
+            Files.deleteIfExists(classFile);
+        }
+        
+        // With only deletions there is nothing left to compile
+        InProcessCompiler.Units units = new InProcessCompiler.Units();
+        if (!plan.compile.isEmpty()
+                && !InProcessCompiler.shared().compile(sourcePath, plan.compile, sourcePath, List.of(), output, units)) {
+            // The cache is left as it was, so the next build retries the same files
+            return false;
+        }
+        try {
+            Files.createDirectories(buildCacheDirectory);
+            cache.update(plan, units).save(cacheFile);
+        } catch (IOException e) {
+            System.err.println("Could not save build cache: " + e.getMessage());
+        }
+        return true;
+    }
+    
+    // Runs the javac command for when no in-process compiler is available
+    private int compileWithJavac(Path sourcePath, List<Path> javaFiles, Consumer<String> output)
+            throws IOException, InterruptedException {
+        List<String> compileCommand = new ArrayList<>();
+        compileCommand.add("javac");
+        compileCommand.add("-cp");
+        compileCommand.add(".");
+        compileCommand.add("-d");
+        compileCommand.add(".");
+        
+        // Add all Java files with their relative paths from the source directory
+        for (Path javaFile : javaFiles) {
+            if (javaFile.startsWith(sourcePath)) {
+                Path relativePath = sourcePath.relativize(javaFile);
+                compileCommand.add(relativePath.toString());
+            } else {
+                compileCommand.add(javaFile.toString());
+            }
+        }
+        
+        ProcessBuilder compilePb = new ProcessBuilder(compileCommand);
+        compilePb.directory(sourcePath.toFile());
+        compilePb.redirectErrorStream(true);
+        
+        Process compileProcess = compilePb.start();
+        
+        try (java.io.BufferedReader reader = new java.io.BufferedReader(
+                new java.io.InputStreamReader(compileProcess.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.accept(line);
+            }
+        }
+        
+        return compileProcess.waitFor();
+    }
+    
+    private void loadGameCatalog() {
+        // Show the games from the last scan right away, then bring them up to date
+        SwingWorker<GameCatalog, Void> loader = new SwingWorker<GameCatalog, Void>() {
+            @Override
+            protected GameCatalog doInBackground() throws Exception {
+                return Files.exists(gameCatalogFile) ? GameCatalog.load(gameCatalogFile) : null;
+            }
             
             @Override
-            protected void process(List<String> chunks) {
-                for (String line : chunks) {
-                    outputArea.append(line + "\n");
-                    outputArea.setCaretPosition(outputArea.getDocument().getLength());
+            protected void done() {
+                try {
+                    GameCatalog catalog = get();
+                    if (catalog != null) {
+                        gameCatalog = catalog;
+                        allGames.clear();
+                        allGames.addAll(catalog.getGames());
+                        updateGamesTable();
+                        scanForGames();
+                    }
+                } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+                    System.err.println("Could not read game catalog: " + e.getMessage());
                 }
             }
         };
-        
-        worker.execute();
+        loader.execute();
     }
     
     private void scanForGames() {
-        allGames.clear();
-        gamesTableModel.setRowCount(0);
+        // The current games stay listed until the scan has something to replace them with.
+        // Directory records are only reused if they were made with the same keywords.
+        final GameCatalog previous = gameCatalog.getConfiguration() == gameKeywordsFingerprint
+            ? gameCatalog : GameCatalog.empty();
+        final List<GameInfo> known = new ArrayList<>(allGames);
         
-        SwingWorker<Void, String> scanner = new SwingWorker<Void, String>() {
+        // Games reach the table as they are found; done() drops the ones that are gone
+        SwingWorker<GameCatalog, GameInfo> scanner = new SwingWorker<GameCatalog, GameInfo>() {
+            private final java.util.concurrent.atomic.AtomicInteger rootsDone = new java.util.concurrent.atomic.AtomicInteger();
+            private volatile int rootCount;
+            private volatile List<Path> timedOut = List.of();
+            
             @Override
-            protected Void doInBackground() throws Exception {
-                publish("Scanning for games...");
-                
+            protected GameCatalog doInBackground() throws Exception {
                 // Common game directories to scan
                 List<Path> scanPaths = new ArrayList<>();
                 Path homeDir = Paths.get(System.getProperty("user.home"));
@@ -1129,63 +2026,434 @@ public class Main {
                     scanPaths.add(Paths.get("C:/Program Files (x86)"));
                 }
                 
-                int totalGames = 0;
+                // A directory reachable from two roots is walked once, under the outer root
+                scanPaths = canonicalScanRoots(scanPaths);
+                java.util.Set<Object> visited = java.util.concurrent.ConcurrentHashMap.newKeySet();
+                rootCount = scanPaths.size();
+                
+                // Each root gets its own task; the semaphore bounds how many walk at once
+                java.util.Map<Path, List<GameInfo>> found = new java.util.concurrent.ConcurrentHashMap<>();
+                java.util.Map<String, GameCatalog.DirRecord> records = new java.util.concurrent.ConcurrentHashMap<>();
+                java.util.Map<Path, AtomicBoolean> stopFlags = new java.util.LinkedHashMap<>();
+                // When each root got its permit (System.nanoTime(), 0 while queued), and whether
+                // the permit has been handed back
+                java.util.Map<Path, java.util.concurrent.atomic.AtomicLong> startTimes = new java.util.HashMap<>();
+                java.util.Map<Path, AtomicBoolean> released = new java.util.HashMap<>();
+                java.util.Map<Path, java.util.concurrent.Future<?>> tasks = new java.util.LinkedHashMap<>();
+                java.util.concurrent.Semaphore permits = new java.util.concurrent.Semaphore(GAME_SCAN_CONCURRENCY);
+                java.util.concurrent.ExecutorService executor = newGameScanExecutor();
                 for (Path scanPath : scanPaths) {
-                    if (Files.exists(scanPath)) {
-                        publish("Scanning: " + scanPath);
-                        totalGames += scanDirectoryForGames(scanPath);
+                    AtomicBoolean stop = new AtomicBoolean();
+                    java.util.concurrent.atomic.AtomicLong started = new java.util.concurrent.atomic.AtomicLong();
+                    AtomicBoolean permitReleased = new AtomicBoolean();
+                    stopFlags.put(scanPath, stop);
+                    startTimes.put(scanPath, started);
+                    released.put(scanPath, permitReleased);
+                    tasks.put(scanPath, executor.submit(() -> {
+                        permits.acquire();
+                        // The root's time budget starts now, not while it waited for a permit
+                        started.set(System.nanoTime());
+                        try {
+                            if (!stop.get() && Files.exists(scanPath)) {
+                                found.put(scanPath, scanDirectoryForGames(scanPath, () -> stop.get() || isCancelled(),
+                                    previous, records, visited, game -> publish(game)));
+                            }
+                        } finally {
+                            if (permitReleased.compareAndSet(false, true)) {
+                                permits.release();
+                            }
+                            rootsDone.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+                // Nothing waits for roots that were given up on
+                executor.shutdown();
+                
+                List<Path> timedOut = new ArrayList<>();
+                this.timedOut = timedOut;
+                long budget = TimeUnit.SECONDS.toNanos(GAME_SCAN_ROOT_TIMEOUT);
+                for (java.util.Map.Entry<Path, java.util.concurrent.Future<?>> task : tasks.entrySet()) {
+                    java.util.concurrent.atomic.AtomicLong started = startTimes.get(task.getKey());
+                    while (true) {
+                        long begun = started.get();
+                        long wait = begun == 0 ? budget : begun + budget - System.nanoTime();
+                        try {
+                            task.getValue().get(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                            break;
+                        } catch (java.util.concurrent.TimeoutException e) {
+                            if (begun == 0) {
+                                continue; // Still queued behind other roots; its clock hasn't started
+                            }
+                            // A slow or hung mount; stop its walk, free its slot and keep going with the rest
+                            stopFlags.get(task.getKey()).set(true);
+                            task.getValue().cancel(true);
+                            if (released.get(task.getKey()).compareAndSet(false, true)) {
+                                permits.release();
+                            }
+                            timedOut.add(task.getKey());
+                            break;
+                        } catch (java.util.concurrent.ExecutionException e) {
+                            System.err.println("Could not scan " + task.getKey() + ": " + e.getCause().getMessage());
+                            break;
+                        }
                     }
                 }
                 
-                publish("Scan complete! Found " + totalGames + " games.");
-                return null;
+                // Merge in root order so the table doesn't depend on which root finished first
+                List<GameInfo> games = new ArrayList<>();
+                for (Path scanPath : scanPaths) {
+                    List<GameInfo> rootGames = found.get(scanPath);
+                    if (rootGames != null) {
+                        games.addAll(rootGames);
+                    }
+                }
+                // Roots that were given up on keep the games they had, in the catalog as in the table
+                if (!timedOut.isEmpty()) {
+                    java.util.Set<Path> paths = new java.util.HashSet<>();
+                    for (GameInfo game : games) {
+                        paths.add(game.getPath());
+                    }
+                    for (GameInfo game : known) {
+                        if (isUnderAny(game.getPath(), timedOut) && paths.add(game.getPath())) {
+                            games.add(game);
+                        }
+                    }
+                }
+                
+                GameCatalog catalog = new GameCatalog(gameKeywordsFingerprint, records, games);
+                try {
+                    Files.createDirectories(gameCatalogFile.getParent());
+                    catalog.save(gameCatalogFile);
+                } catch (IOException e) {
+                    System.err.println("Could not save game catalog: " + e.getMessage());
+                }
+                return catalog;
             }
             
             @Override
-            protected void process(List<String> chunks) {
-                for (String message : chunks) {
-                    statusLabel.setText(message);
-                }
+            protected void process(List<GameInfo> games) {
+                appendGames(games);
+                statusLabel.setText("Scanning for games... " + allGames.size() + " found (" + 
+                    rootsDone.get() + "/" + rootCount + " locations done)");
             }
             
             @Override
             protected void done() {
-                updateGamesTable();
-                statusLabel.setText("Games scan complete - Found " + allGames.size() + " games");
+                try {
+                    gameCatalog = get();
+                    reconcileGames(gameCatalog.getGames(), timedOut);
+                } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+                    System.err.println("Games scan failed: " + e.getMessage());
+                }
+                statusLabel.setText("Games scan complete - Found " + allGames.size() + " games" + 
+                    (timedOut.isEmpty() ? "" : " (timed out: " + timedOut + ")"));
             }
         };
         
         scanner.execute();
     }
     
-    private int scanDirectoryForGames(Path directory) {
-        int gameCount = 0;
+    // Virtual threads where the JDK has them (21 and later), daemon threads otherwise. Either
+    // way the semaphore in scanForGames bounds the walks, so a root that hangs in a syscall
+    // after it was given up on doesn't keep a queued root from getting a thread.
+    private static java.util.concurrent.ExecutorService newGameScanExecutor() {
+        try {
+            return (java.util.concurrent.ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "game-scan");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    // Resolves symlinks in the roots and drops missing roots, duplicates and roots that lie
+    // inside another root. Order is kept otherwise.
+    private List<Path> canonicalScanRoots(List<Path> roots) {
+        List<Path> canonical = new ArrayList<>();
+        for (Path root : roots) {
+            try {
+                Path real = root.toRealPath();
+                if (Files.isDirectory(real) && !canonical.contains(real)) {
+                    canonical.add(real);
+                }
+            } catch (IOException e) {
+                // Missing or unreadable; nothing to scan
+            }
+        }
+        
+        List<Path> outermost = new ArrayList<>();
+        for (Path root : canonical) {
+            boolean nested = false;
+            for (Path other : canonical) {
+                if (!other.equals(root) && root.startsWith(other)) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) {
+                outermost.add(root);
+            }
+        }
+        return outermost;
+    }
+    
+    // visited holds the file keys of directories already walked in this scan, across all
+    // roots, so bind mounts and other aliases of a directory are only read once
+    private List<GameInfo> scanDirectoryForGames(Path directory, BooleanSupplier cancelled,
+            GameCatalog previous, java.util.Map<String, GameCatalog.DirRecord> records,
+            java.util.Set<Object> visited, Consumer<GameInfo> found) {
+        // One walk records what each directory holds; games and projects are classified
+        // from those facts afterwards instead of re-walking every candidate directory
+        java.util.Map<Path, DirFacts> facts = new java.util.concurrent.ConcurrentHashMap<>();
+        long started = System.currentTimeMillis();
+        
         try {
-            // First scan for individual game files
-            Files.walk(directory, 3)
-                .filter(Files::isRegularFile)
-                .forEach(file -> {
-                    GameInfo game = detectGame(file);
-                    if (game != null) {
-                        allGames.add(game);
+            java.nio.file.attribute.BasicFileAttributes rootAttrs =
+                Files.readAttributes(directory, java.nio.file.attribute.BasicFileAttributes.class);
+            if (rootAttrs.fileKey() != null && !visited.add(rootAttrs.fileKey())) {
+                return new ArrayList<>();
+            }
+            facts.put(directory, new DirFacts(null, "", 0, rootAttrs));
+            ParallelTreeWalker.shared().walk(directory, GAME_SCAN_MAX_DEPTH, cancelled, new ParallelTreeWalker.Visitor() {
+                @Override
+                public boolean visit(Path path, java.nio.file.attribute.BasicFileAttributes attrs, int depth) {
+                    if (TrashReaper.isTrash(path)) {
+                        return false;
                     }
-                });
-            
-            // Then scan for project directories that might be games
-            Files.walk(directory, 2)
-                .filter(Files::isDirectory)
-                .filter(dir -> !dir.equals(directory))
-                .forEach(projectDir -> {
-                    GameInfo projectGame = detectProjectGame(projectDir);
-                    if (projectGame != null) {
-                        allGames.add(projectGame);
+                    // Left out entirely, as if the alias weren't there
+                    if (attrs.isDirectory() && attrs.fileKey() != null && !visited.add(attrs.fileKey())) {
+                        return false;
                     }
-                });
+                    // All entries of a directory are visited by one task, so its facts need no locking
+                    DirFacts parent = facts.get(path.getParent());
+                    String name = path.getFileName().toString();
+                    parent.record(name, attrs.isRegularFile() && isGameFileName(name));
+                    
+                    if (attrs.isRegularFile()) {
+                        GameInfo game = detectGame(path);
+                        if (game != null) {
+                            parent.games.add(game);
+                            if (depth <= GAME_FILE_MAX_DEPTH) {
+                                found.accept(game);
+                            }
+                        }
+                    }
+                    
+                    if (!attrs.isDirectory()) {
+                        return false;
+                    }
+                    parent.subdirectories.add(name);
+                    facts.put(path, new DirFacts(parent, name, depth, attrs));
+                    return needsGameFacts(directory, path, depth);
+                }
+                
+                @Override
+                public Iterable<Path> entries(Path dir) {
+                    // An unchanged directory mtime means the same children; only its
+                    // subdirectories need visiting to check for changes further down
+                    DirFacts dirFacts = facts.get(dir);
+                    GameCatalog.DirRecord record = previous.getDirectory(dir);
+                    if (record == null || !record.isCurrent(dirFacts.modified, dirFacts.fingerprint)) {
+                        return null;
+                    }
+                    dirFacts.restore(record);
+                    if (dirFacts.depth < GAME_FILE_MAX_DEPTH) {
+                        record.games.forEach(found);
+                    }
+                    List<Path> subdirectories = new ArrayList<>(record.subdirectories.size());
+                    for (String name : record.subdirectories) {
+                        subdirectories.add(dir.resolve(name));
+                    }
+                    return subdirectories;
+                }
                 
+                @Override
+                public void listed(Path dir) {
+                    // Only a complete listing may be saved and trusted by later scans
+                    facts.get(dir).listed = true;
+                }
+            });
         } catch (IOException e) {
             // Continue scanning other directories
         }
-        return gameCount;
+        // A stopped walk leaves directories unvisited that a record would claim are empty
+        boolean stopped = cancelled.getAsBoolean();
+        
+        // Deepest directories first, so every child is complete before its parent reads it
+        List<DirFacts> bottomUp = new ArrayList<>(facts.values());
+        bottomUp.sort((a, b) -> Integer.compare(b.depth, a.depth));
+        for (DirFacts dir : bottomUp) {
+            dir.finish();
+        }
+        
+        List<GameInfo> files = new ArrayList<>();
+        List<GameInfo> projects = new ArrayList<>();
+        for (java.util.Map.Entry<Path, DirFacts> entry : facts.entrySet()) {
+            DirFacts dir = entry.getValue();
+            if (dir.listed) {
+                if (dir.depth < GAME_FILE_MAX_DEPTH) {
+                    files.addAll(dir.games);
+                }
+                // Directories touched within the mtime granularity may change again unnoticed
+                if (!stopped && dir.modified < started - GAME_CATALOG_RACY_MILLIS) {
+                    records.put(entry.getKey().toString(), new GameCatalog.DirRecord(dir.modified, dir.fingerprint,
+                        dir.flags, dir.games, dir.subdirectories));
+                }
+            }
+            if (dir.depth >= 1 && dir.depth <= GAME_PROJECT_MAX_DEPTH) {
+                GameInfo projectGame = detectProjectGame(entry.getKey(), dir);
+                if (projectGame != null) {
+                    projects.add(projectGame);
+                    found.accept(projectGame);
+                }
+            }
+        }
+        
+        // Keep results in a stable order regardless of which thread found them
+        java.util.Comparator<GameInfo> byPath = java.util.Comparator.comparing(game -> game.getPath().toString());
+        List<GameInfo> games = new ArrayList<>(files.size() + projects.size());
+        files.sort(byPath);
+        projects.sort(byPath);
+        games.addAll(files);
+        games.addAll(projects);
+        return games;
+    }
+    
+    // Whether the walk has to look inside this directory for any project above it
+    private boolean needsGameFacts(Path root, Path dir, int depth) {
+        // Game-named files may sit up to GAME_FILE_SEARCH_DEPTH below any candidate project
+        if (depth < GAME_PROJECT_MAX_DEPTH + GAME_FILE_SEARCH_DEPTH) {
+            return true;
+        }
+        
+        // Below that, only source trees of game-named projects are needed for the Java check
+        Path relative = root.relativize(dir);
+        for (int project = 1; project <= GAME_PROJECT_MAX_DEPTH && project < relative.getNameCount(); project++) {
+            if (!relative.getName(project).toString().equals("src")
+                    || !isLikelyGameProject(relative.getName(project - 1).toString())) {
+                continue;
+            }
+            int below = depth - project;
+            if (below < 1 + JAVA_SRC_SEARCH_DEPTH) {
+                return true;
+            }
+            if (below < 3 + JAVA_MAIN_SEARCH_DEPTH && relative.getNameCount() > project + 2
+                    && relative.getName(project + 1).toString().equals("main")
+                    && relative.getName(project + 2).toString().equals("java")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // What a scanned directory holds, gathered in one pass. Depths are relative to the
+    // directory (1 = direct child) and stay at NONE if nothing was found.
+    private static class DirFacts {
+        static final int NONE = Integer.MAX_VALUE - 1;
+        // Direct-child flags, as stored in the game catalog
+        static final int HAS_POM = 1;
+        static final int HAS_GRADLE = 2;
+        static final int HAS_PACKAGE_JSON = 4;
+        static final int HAS_JAVA = 8;
+        static final int HAS_PYTHON = 16;
+        static final int HAS_GAME_FILE = 32;
+        
+        final DirFacts parent;
+        final String name;
+        final int depth;
+        final long modified;
+        final int fingerprint;
+        // Set once all of this directory's children were visited, listed or from the catalog
+        boolean listed;
+        int flags;
+        List<GameInfo> games = new ArrayList<>();
+        final List<String> subdirectories = new ArrayList<>();
+        boolean hasPom;
+        boolean hasGradle;
+        boolean hasPackageJson;
+        int javaDepth = NONE;
+        int pythonDepth = NONE;
+        int gameFileDepth = NONE;
+        // Java depth inside ./java, ./main/java, ./src and ./src/main/java
+        int javaDirJavaDepth = NONE;
+        int mainJavaJavaDepth = NONE;
+        int srcJavaDepth = NONE;
+        int srcMainJavaDepth = NONE;
+        
+        DirFacts(DirFacts parent, String name, int depth, java.nio.file.attribute.BasicFileAttributes attrs) {
+            this.parent = parent;
+            this.name = name;
+            this.depth = depth;
+            this.modified = attrs.lastModifiedTime().toMillis();
+            this.fingerprint = GameCatalog.fingerprintOf(attrs);
+        }
+        
+        void record(String childName, boolean gameFile) {
+            int found = 0;
+            if (childName.equals("pom.xml")) {
+                found |= HAS_POM;
+            }
+            if (childName.equals("build.gradle") || childName.equals("build.gradle.kts")) {
+                found |= HAS_GRADLE;
+            }
+            if (childName.equals("package.json")) {
+                found |= HAS_PACKAGE_JSON;
+            }
+            if (childName.endsWith(".java")) {
+                found |= HAS_JAVA;
+            }
+            if (childName.endsWith(".py")) {
+                found |= HAS_PYTHON;
+            }
+            if (gameFile) {
+                found |= HAS_GAME_FILE;
+            }
+            addFlags(found);
+        }
+        
+        // Takes over what an earlier scan saw in this unchanged directory
+        void restore(GameCatalog.DirRecord record) {
+            addFlags(record.flags);
+            games = record.games;
+        }
+        
+        private void addFlags(int found) {
+            flags |= found;
+            hasPom |= (found & HAS_POM) != 0;
+            hasGradle |= (found & HAS_GRADLE) != 0;
+            hasPackageJson |= (found & HAS_PACKAGE_JSON) != 0;
+            if ((found & HAS_JAVA) != 0) {
+                javaDepth = 1;
+            }
+            if ((found & HAS_PYTHON) != 0) {
+                pythonDepth = 1;
+            }
+            if ((found & HAS_GAME_FILE) != 0) {
+                gameFileDepth = 1;
+            }
+        }
+        
+        // Folds this directory into its parent once all of its children are done
+        void finish() {
+            if (parent == null) {
+                return;
+            }
+            parent.javaDepth = Math.min(parent.javaDepth, javaDepth + 1);
+            parent.pythonDepth = Math.min(parent.pythonDepth, pythonDepth + 1);
+            parent.gameFileDepth = Math.min(parent.gameFileDepth, gameFileDepth + 1);
+            if (name.equals("java")) {
+                parent.javaDirJavaDepth = javaDepth;
+            } else if (name.equals("main")) {
+                parent.mainJavaJavaDepth = javaDirJavaDepth;
+            } else if (name.equals("src")) {
+                parent.srcJavaDepth = javaDepth;
+                parent.srcMainJavaDepth = mainJavaJavaDepth;
+            }
+        }
     }
     
     private GameInfo detectGame(Path file) {
@@ -1251,14 +2519,12 @@ public class Main {
         return null;
     }
     
-    private GameInfo detectProjectGame(Path projectDir) {
+    private GameInfo detectProjectGame(Path projectDir, DirFacts facts) {
         try {
-            String projectName = projectDir.getFileName().toString().toLowerCase();
-            
             // Check if project name suggests it's a game
-            if (isLikelyGameProject(projectName)) {
+            if (isLikelyGameProject(facts.name)) {
                 // Determine project type and how to run it
-                if (Files.exists(projectDir.resolve("pom.xml"))) {
+                if (facts.hasPom) {
                     return new GameInfo(
                         getGameNameFromPath(projectDir),
                         "Maven Game Project",
@@ -1266,8 +2532,7 @@ public class Main {
                         "Maven-based Java game project",
                         true
                     );
-                } else if (Files.exists(projectDir.resolve("build.gradle")) || 
-                          Files.exists(projectDir.resolve("build.gradle.kts"))) {
+                } else if (facts.hasGradle) {
                     return new GameInfo(
                         getGameNameFromPath(projectDir),
                         "Gradle Game Project", 
@@ -1275,7 +2540,7 @@ public class Main {
                         "Gradle-based Java game project",
                         true
                     );
-                } else if (Files.exists(projectDir.resolve("package.json"))) {
+                } else if (facts.hasPackageJson) {
                     return new GameInfo(
                         getGameNameFromPath(projectDir),
                         "Node.js Game Project",
@@ -1283,7 +2548,7 @@ public class Main {
                         "JavaScript/Node.js game project",
                         true
                     );
-                } else if (hasJavaFiles(projectDir)) {
+                } else if (hasJavaFiles(facts)) {
                     return new GameInfo(
                         getGameNameFromPath(projectDir),
                         "Java Game Project",
@@ -1291,7 +2556,7 @@ public class Main {
                         "Plain Java game project",
                         true
                     );
-                } else if (hasPythonFiles(projectDir)) {
+                } else if (facts.pythonDepth <= 2) {
                     return new GameInfo(
                         getGameNameFromPath(projectDir),
                         "Python Game Project",
@@ -1303,7 +2568,7 @@ public class Main {
             }
             
             // Also check if it contains game-related files even if name doesn't suggest it
-            if (containsGameFiles(projectDir)) {
+            if (facts.gameFileDepth <= GAME_FILE_SEARCH_DEPTH) {
                 return new GameInfo(
                     getGameNameFromPath(projectDir),
                     "Game Project",
@@ -1321,48 +2586,17 @@ public class Main {
     }
     
     private boolean isLikelyGameProject(String projectName) {
-        // More inclusive game detection
-        String[] gameKeywords = {
-            "game", "play", "puzzle", "arcade", "adventure", "action", "rpg", "strategy",
-            "simulation", "racing", "sports", "shooter", "platformer", "tetris", "snake",
-            "pong", "chess", "checkers", "solitaire", "poker", "blackjack", "mario",
-            "zelda", "minecraft", "doom", "quake", "sim", "tycoon", "city", "farm",
-            "defense", "tower", "match", "candy", "bird", "run", "jump", "fight",
-            "battle", "war", "quest", "dungeon", "castle", "knight", "ninja", "pirate",
-            "yooo", "fun", "entertainment", "toy", "mini", "simple", "classic"
-        };
-        
-        for (String keyword : gameKeywords) {
-            if (projectName.contains(keyword)) {
-                return true;
-            }
-        }
-        
-        return false;
+        return gameProjectKeywords.matches(projectName);
     }
     
-    private boolean containsGameFiles(Path projectDir) {
-        try {
-            return Files.walk(projectDir, 3)
-                .filter(Files::isRegularFile)
-                .anyMatch(file -> {
-                    String fileName = file.getFileName().toString().toLowerCase();
-                    return fileName.contains("game") || fileName.contains("play") ||
-                           fileName.contains("main") || fileName.contains("start") ||
-                           fileName.contains("run") || fileName.contains("app");
-                });
-        } catch (IOException e) {
-            return false;
-        }
+    private boolean isGameFileName(String fileName) {
+        return projectFileKeywords.matches(fileName);
     }
     
-    private boolean hasPythonFiles(Path projectDir) {
-        try {
-            return Files.walk(projectDir, 2)
-                .anyMatch(p -> p.toString().endsWith(".py"));
-        } catch (IOException e) {
-            return false;
-        }
+    // Same layouts detectProjectType checks: top level, src/ and src/main/java/
+    private boolean hasJavaFiles(DirFacts facts) {
+        return facts.javaDepth == 1 || facts.srcJavaDepth <= JAVA_SRC_SEARCH_DEPTH
+            || facts.srcMainJavaDepth <= JAVA_MAIN_SEARCH_DEPTH;
     }
     
     private String getGameNameFromPath(Path path) {
@@ -1370,28 +2604,50 @@ public class Main {
     }
     
     private boolean isLikelyGame(String fileName) {
-        String[] gameKeywords = {
-            "game", "play", "puzzle", "arcade", "adventure", "action", "rpg", "strategy",
-            "simulation", "racing", "sports", "shooter", "platformer", "tetris", "snake",
-            "pong", "chess", "checkers", "solitaire", "poker", "blackjack", "mario",
-            "zelda", "minecraft", "doom", "quake", "sim", "tycoon", "city", "farm",
-            "defense", "tower", "match", "candy", "bird", "run", "jump", "fight",
-            "battle", "war", "quest", "dungeon", "castle", "knight", "ninja", "pirate"
-        };
-        
-        for (String keyword : gameKeywords) {
-            if (fileName.contains(keyword)) {
-                return true;
+        return gameKeywords.matches(fileName);
+    }
+    
+    private boolean isInGameDirectory(Path file) {
+        return gameFolderKeywords.matches(file.getParent().getFileName().toString());
+    }
+    
+    private void loadGameKeywords() {
+        // Keyword lists can be overridden with comma-separated entries in app/game-keywords.properties
+        java.util.Properties overrides = new java.util.Properties();
+        Path keywordsFile = currentPath.resolve("app").resolve("game-keywords.properties");
+        if (Files.exists(keywordsFile)) {
+            try (java.io.Reader reader = Files.newBufferedReader(keywordsFile)) {
+                overrides.load(reader);
+            } catch (IOException e) {
+                System.err.println("Could not read game keywords: " + e.getMessage());
             }
         }
         
-        return false;
+        List<String> games = keywordList(overrides, "games", DEFAULT_GAME_KEYWORDS);
+        List<String> projects = keywordList(overrides, "projects", DEFAULT_GAME_PROJECT_KEYWORDS);
+        List<String> folders = keywordList(overrides, "folders", DEFAULT_GAME_FOLDER_KEYWORDS);
+        List<String> projectFiles = keywordList(overrides, "projectFiles", DEFAULT_PROJECT_FILE_KEYWORDS);
+        gameKeywords = new KeywordMatcher(games);
+        gameProjectKeywords = new KeywordMatcher(projects);
+        gameFolderKeywords = new KeywordMatcher(folders);
+        projectFileKeywords = new KeywordMatcher(projectFiles);
+        
+        // Catalogued scan results are only reusable under the same keywords
+        gameKeywordsFingerprint = GameCatalog.configurationFor(List.of(games, projects, folders, projectFiles));
     }
     
-    private boolean isInGameDirectory(Path file) {
-        String parentDir = file.getParent().getFileName().toString().toLowerCase();
-        return parentDir.contains("game") || parentDir.contains("play") || 
-               parentDir.contains("arcade") || parentDir.contains("entertainment");
+    private static List<String> keywordList(java.util.Properties overrides, String key, String[] defaults) {
+        String value = overrides.getProperty(key);
+        if (value == null) {
+            return List.of(defaults);
+        }
+        List<String> keywords = new ArrayList<>();
+        for (String keyword : value.split(",")) {
+            if (!keyword.isBlank()) {
+                keywords.add(keyword.trim().toLowerCase());
+            }
+        }
+        return keywords;
     }
     
     private String getGameNameFromFile(Path file) {
@@ -1417,13 +2673,107 @@ public class Main {
     private void updateGamesTable() {
         gamesTableModel.setRowCount(0);
         for (GameInfo game : allGames) {
-            gamesTableModel.addRow(new Object[]{
-                game.getName(),
-                game.getType(),
-                game.isWorking() ? "Working" : "Unknown",
-                game.getDescription(),
-                game.getPath().toString()
-            });
+            gamesTableModel.addRow(gameRow(game));
+        }
+    }
+    
+    private Object[] gameRow(GameInfo game) {
+        return new Object[]{
+            game.getName(),
+            game.getType(),
+            game.isWorking() ? "Working" : "Unknown",
+            game.getDescription(),
+            game.getPath().toString()
+        };
+    }
+    
+    // Adds newly found games in one table event; games already listed are skipped
+    private void appendGames(List<GameInfo> games) {
+        java.util.Set<Path> listed = new java.util.HashSet<>();
+        for (GameInfo game : allGames) {
+            listed.add(game.getPath());
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (GameInfo game : games) {
+            if (listed.add(game.getPath())) {
+                allGames.add(game);
+                rows.add(gameRow(game));
+            }
+        }
+        gamesTableModel.addRows(rows);
+    }
+    
+    // Brings the listed games in line with a finished scan without reordering the rows.
+    // Nothing is known about games under roots the scan gave up on, so those rows stay.
+    private void reconcileGames(List<GameInfo> games, List<Path> stoppedRoots) {
+        java.util.Map<Path, GameInfo> current = new java.util.HashMap<>();
+        for (GameInfo game : games) {
+            current.putIfAbsent(game.getPath(), game);
+        }
+        for (int row = allGames.size() - 1; row >= 0; row--) {
+            GameInfo game = current.remove(allGames.get(row).getPath());
+            if (game == null) {
+                if (!isUnderAny(allGames.get(row).getPath(), stoppedRoots)) {
+                    allGames.remove(row);
+                    gamesTableModel.removeRow(row);
+                }
+            } else {
+                allGames.set(row, game);
+                gamesTableModel.updateRow(row, gameRow(game));
+            }
+        }
+        // Anything the scan found that never made it into the table
+        List<GameInfo> missing = new ArrayList<>();
+        for (GameInfo game : games) {
+            if (current.remove(game.getPath()) != null) {
+                missing.add(game);
+            }
+        }
+        appendGames(missing);
+    }
+    
+    private static boolean isUnderAny(Path path, List<Path> roots) {
+        for (Path root : roots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Games table that can take a batch of rows, or an unchanged row, without an event per cell
+    private static class GamesTableModel extends DefaultTableModel {
+        private static final long serialVersionUID = 1L;
+        
+        GamesTableModel(String[] columnNames) {
+            super(columnNames, 0);
+        }
+        
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+        
+        void addRows(List<Object[]> rows) {
+            if (rows.isEmpty()) {
+                return;
+            }
+            int firstRow = getRowCount();
+            for (Object[] row : rows) {
+                dataVector.add(convertToVector(row));
+            }
+            fireTableRowsInserted(firstRow, getRowCount() - 1);
+        }
+        
+        // Fires one update, and only if a value actually differs
+        void updateRow(int row, Object[] values) {
+            for (int column = 0; column < values.length; column++) {
+                if (!java.util.Objects.equals(getValueAt(row, column), values[column])) {
+                    dataVector.set(row, convertToVector(values));
+                    fireTableRowsUpdated(row, row);
+                    return;
+                }
+            }
         }
     }
     
@@ -1451,7 +2801,9 @@ public class Main {
                     Path gameAppDir = appGamesDirectory.resolve(safeName);
                     
                     // Copy the game to app directory
-                    Path copiedGamePath = copyGameToAppDirectory(game, gameAppDir);
+                    Path copiedGamePath = copyGameToAppDirectory(game, gameAppDir, (bytes, totalBytes, files, totalFiles) ->
+                        publish("Copying game to app directory... " + files + "/" + totalFiles + " files, " + 
+                            formatFileSize(bytes) + " of " + formatFileSize(totalBytes)));
                     
                     publish("Starting game: " + game.getName());
                     
@@ -1490,52 +2842,124 @@ public class Main {
         launcher.execute();
     }
     
-    private Path copyGameToAppDirectory(GameInfo game, Path targetDir) throws IOException {
-        // Remove existing copy if it exists
-        if (Files.exists(targetDir)) {
-            deleteDirectory(targetDir);
-        }
-        
+    private Path copyGameToAppDirectory(GameInfo game, Path targetDir, CopyEngine.Progress progress) throws IOException {
+        // The staged copy from an earlier launch is brought up to date rather than replaced
         Files.createDirectories(targetDir);
+        java.util.Map<Path, java.nio.file.attribute.BasicFileAttributes> staged = listTree(targetDir);
         
         if (Files.isDirectory(game.getPath())) {
-            // Copy entire project directory
-            copyDirectory(game.getPath(), targetDir);
+            // Sync entire project directory
+            syncTree(game.getPath(), listTree(game.getPath()), targetDir, staged, progress);
             return targetDir;
         } else {
-            // Copy single file
-            Path targetFile = targetDir.resolve(game.getPath().getFileName());
-            Files.copy(game.getPath(), targetFile, StandardCopyOption.REPLACE_EXISTING);
-            return targetFile;
+            // Sync single file
+            Path source = game.getPath();
+            syncTree(source.getParent(), java.util.Map.of(source.getFileName(),
+                Files.readAttributes(source, java.nio.file.attribute.BasicFileAttributes.class)), targetDir, staged, progress);
+            return targetDir.resolve(source.getFileName());
         }
     }
     
-    private void copyDirectory(Path source, Path target) throws IOException {
-        Files.walk(source)
-            .forEach(sourcePath -> {
-                try {
-                    Path targetPath = target.resolve(source.relativize(sourcePath));
-                    if (Files.isDirectory(sourcePath)) {
-                        Files.createDirectories(targetPath);
-                    } else {
-                        Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+    // Relative path and attributes of everything below root; links to files count as
+    // the files they point to, links to directories are left out
+    private java.util.Map<Path, java.nio.file.attribute.BasicFileAttributes> listTree(Path root) throws IOException {
+        java.util.Map<Path, java.nio.file.attribute.BasicFileAttributes> entries = new java.util.concurrent.ConcurrentHashMap<>();
+        ParallelTreeWalker.shared().walk(root, Integer.MAX_VALUE, null, new ParallelTreeWalker.Visitor() {
+            @Override
+            public boolean visit(Path path, java.nio.file.attribute.BasicFileAttributes attrs, int depth) throws IOException {
+                // Folders deleted from a staged copy are still being reaped in here
+                if (TrashReaper.isTrash(path)) {
+                    return false;
+                }
+                if (attrs.isSymbolicLink()) {
+                    attrs = Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class);
+                    if (attrs.isDirectory()) {
+                        return false;
                     }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
                 }
-            });
+                entries.put(root.relativize(path), attrs);
+                return true;
+            }
+            
+            @Override
+            public void failed(Path path, IOException e) throws IOException {
+                throw e;
+            }
+        });
+        return entries;
+    }
+    
+    // Makes target mirror the given source entries: files whose size or mtime differ are
+    // copied (with their mtime, so the next sync sees them as unchanged), and anything the
+    // source doesn't have is deleted. Returns the number of files copied.
+    private int syncTree(Path source, java.util.Map<Path, java.nio.file.attribute.BasicFileAttributes> sourceEntries,
+            Path target, java.util.Map<Path, java.nio.file.attribute.BasicFileAttributes> targetEntries,
+            CopyEngine.Progress progress) throws IOException {
+        // Children sort after their parents, so deleting in reverse order empties directories first
+        List<Path> stale = new ArrayList<>();
+        for (java.util.Map.Entry<Path, java.nio.file.attribute.BasicFileAttributes> entry : targetEntries.entrySet()) {
+            // The trash is never stale; moving it into itself would fail the sync
+            if (isInTrash(entry.getKey())) {
+                continue;
+            }
+            java.nio.file.attribute.BasicFileAttributes wanted = sourceEntries.get(entry.getKey());
+            if (wanted == null || wanted.isDirectory() != entry.getValue().isDirectory()) {
+                stale.add(entry.getKey());
+            }
+        }
+        stale.sort(java.util.Comparator.reverseOrder());
+        for (Path relative : stale) {
+            Path path = target.resolve(relative);
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                deleteDirectory(path);
+            } else {
+                Files.deleteIfExists(path);
+            }
+        }
+        
+        List<Path> paths = new ArrayList<>(sourceEntries.keySet());
+        java.util.Collections.sort(paths);
+        List<Path> changed = new ArrayList<>();
+        for (Path relative : paths) {
+            if (isInTrash(relative)) {
+                continue;
+            }
+            java.nio.file.attribute.BasicFileAttributes attrs = sourceEntries.get(relative);
+            Path targetPath = target.resolve(relative.toString());
+            if (attrs.isDirectory()) {
+                Files.createDirectories(targetPath);
+            } else if (!isStagedCopyCurrent(source.resolve(relative), attrs, targetPath, targetEntries.get(relative))) {
+                changed.add(relative);
+            }
+        }
+        
+        // Clones, links or copies, whichever the filesystem supports
+        FileStager.shared().stage(source, target, changed, progress);
+        return changed.size();
+    }
+    
+    private static boolean isInTrash(Path relative) {
+        for (Path name : relative) {
+            if (TrashReaper.isTrash(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean isStagedCopyCurrent(Path source, java.nio.file.attribute.BasicFileAttributes sourceAttrs,
+            Path staged, java.nio.file.attribute.BasicFileAttributes stagedAttrs) throws IOException {
+        if (stagedAttrs == null || stagedAttrs.isDirectory() || stagedAttrs.size() != sourceAttrs.size()
+                || stagedAttrs.lastModifiedTime().toMillis() != sourceAttrs.lastModifiedTime().toMillis()) {
+            return false;
+        }
+        // Size and mtime can't see edits that preserve both; comparing contents can
+        return !VERIFY_STAGED_CONTENT || Files.mismatch(source, staged) == -1;
     }
     
     private void deleteDirectory(Path directory) throws IOException {
-        Files.walk(directory)
-            .sorted((a, b) -> b.compareTo(a)) // Reverse order to delete files before directories
-            .forEach(path -> {
-                try {
-                    Files.delete(path);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+        // Gone from directory at once; the contents are removed in the background
+        TrashReaper.shared().delete(directory);
     }
     
     private void launchCopiedGame(GameInfo game, Path copiedPath) throws IOException {
@@ -1629,10 +3053,8 @@ public class Main {
             }
             
             // If no standard main file, find any Python file
-            return Files.walk(projectPath, 2)
-                .filter(p -> p.toString().endsWith(".py"))
-                .findFirst()
-                .orElse(null);
+            List<Path> pythonFiles = TrashReaper.findFiles(projectPath, 2, ".py");
+            return pythonFiles.isEmpty() ? null : pythonFiles.get(0);
                 
         } catch (IOException e) {
             return null;
@@ -1684,37 +3106,133 @@ public class Main {
             JOptionPane.INFORMATION_MESSAGE);
     }
     
-    private String findMainClass(Path sourcePath, List<Path> javaFiles) {
-        for (Path javaFile : javaFiles) {
-            try {
-                String content = Files.readString(javaFile);
-                if (content.contains("public static void main")) {
-                    // Get the class name with package
-                    String className = getFullClassName(sourcePath, javaFile, content);
-                    return className;
+    // All entry points, sorted by class name
+    private List<String> findMainClasses(Path sourcePath, List<Path> javaFiles) throws IOException {
+        if (MAIN_CLASS_FROM_BYTECODE) {
+            return MainClassIndex.shared().fromClasses(sourcePath);
+        }
+        // Sources can be laid out in ways the scanner doesn't follow; the classes can't
+        List<String> mainClasses = MainClassIndex.shared().fromSources(javaFiles);
+        return mainClasses.isEmpty() ? MainClassIndex.shared().fromClasses(sourcePath) : mainClasses;
+    }
+    
+    // Asks which entry point to run when there is more than one; null if none or cancelled
+    private String chooseMainClass(Path sourcePath, List<String> mainClasses) throws Exception {
+        if (mainClasses.size() <= 1) {
+            return mainClasses.isEmpty() ? null : mainClasses.get(0);
+        }
+        
+        String previous = chosenMainClasses.get(sourcePath);
+        String[] choice = new String[1];
+        SwingUtilities.invokeAndWait(() -> choice[0] = (String) JOptionPane.showInputDialog(frame,
+            "Select the main class to run:",
+            "Main Class",
+            JOptionPane.QUESTION_MESSAGE,
+            null,
+            mainClasses.toArray(),
+            mainClasses.contains(previous) ? previous : mainClasses.get(0)));
+        if (choice[0] != null) {
+            chosenMainClasses.put(sourcePath, choice[0]);
+        }
+        return choice[0];
+    }
+    
+    // What loading a listing hands to done(): the name order and the index built in it
+    private static class LoadResult {
+        final int[] order;
+        final FileNameIndex index;
+        
+        LoadResult(int[] order, FileNameIndex index) {
+            this.order = order;
+            this.index = index;
+        }
+    }
+    
+    // The index stored by the last walk of a root, used while the root is walked again.
+    // Its postings cover directories whose mtime matched when the walk reached them; the
+    // entries streamed in from any other directory are scanned. A directory whose names
+    // turn out to differ after all makes the whole index stale.
+    private static class WalkIndex {
+        final FileNameIndex stored;
+        // Written by walker threads, read on the EDT
+        final java.util.Set<String> fresh = java.util.concurrent.ConcurrentHashMap.newKeySet();
+        volatile boolean stale;
+        // Ids of streamed entries outside fresh directories (EDT only)
+        private int[] uncovered = new int[64];
+        private int uncoveredCount;
+        
+        WalkIndex(FileNameIndex stored) {
+            this.stored = stored;
+        }
+        
+        boolean covers(String name) {
+            return fresh.contains(FileNameIndex.directoryOf(name));
+        }
+        
+        void track(FileTableModel model, int firstId) {
+            int count = model.getEntryCount();
+            for (int id = firstId; id < count; id++) {
+                if (!covers(model.getEntryName(id))) {
+                    if (uncoveredCount == uncovered.length) {
+                        uncovered = java.util.Arrays.copyOf(uncovered, uncoveredCount * 2);
+                    }
+                    uncovered[uncoveredCount++] = id;
                 }
-            } catch (IOException e) {
-                // Continue searching
             }
         }
-        return null;
+        
+        SearchResult search(FileTableModel model, String query) {
+            int[] hits = stored.query(query);
+            int[] ids = new int[hits.length + uncoveredCount];
+            int found = 0;
+            for (int hit : hits) {
+                // Stored names not streamed in yet are picked up as they arrive
+                String name = stored.getName(hit);
+                int id = covers(name) ? model.findEntry(name) : -1;
+                if (id != -1) {
+                    ids[found++] = id;
+                }
+            }
+            for (int i = 0; i < uncoveredCount; i++) {
+                if (FileTableModel.containsIgnoreCase(model.getEntryName(uncovered[i]), query)) {
+                    ids[found++] = uncovered[i];
+                }
+            }
+            java.util.Arrays.sort(ids, 0, found);
+            return new SearchResult(query, null, ids, found, model.getStructureVersion(), model.getEntryCount());
+        }
     }
     
-    private String getFullClassName(Path sourcePath, Path javaFile, String content) {
-        String fileName = javaFile.getFileName().toString();
-        String className = fileName.substring(0, fileName.lastIndexOf('.'));
+    private static class SearchResult {
+        private final String query;
+        // Set for ranked fuzzy results, null for plain substring matches
+        private final FuzzyMatcher matcher;
+        private final int[] ids;
+        private final int count;
+        private final int structureVersion;
+        private final int entryCount;
+        
+        SearchResult(String query, FuzzyMatcher matcher, int[] ids, int count, int structureVersion, int entryCount) {
+            this.query = query;
+            this.matcher = matcher;
+            this.ids = ids;
+            this.count = count;
+            this.structureVersion = structureVersion;
+            this.entryCount = entryCount;
+        }
         
-        // Check if there's a package declaration
-        String[] lines = content.split("\n");
-        for (String line : lines) {
-            line = line.trim();
-            if (line.startsWith("package ") && line.endsWith(";")) {
-                String packageName = line.substring(8, line.length() - 1).trim();
-                return packageName + "." + className;
+        boolean accepts(String name) {
+            if (matcher != null) {
+                return matcher.score(name) != FuzzyMatcher.NO_MATCH;
             }
+            return query.isEmpty() || FileTableModel.containsIgnoreCase(name, query);
         }
         
-        return className; // No package, just class name
+        boolean canNarrowTo(String newQuery, int version, int newCount) {
+            // Ranked results are truncated to the best K, so they can't be narrowed
+            return matcher == null && structureVersion == version && entryCount <= newCount
+                && !query.isEmpty() && newQuery.contains(query);
+        }
     }
     
     private enum ProjectType {
@@ -1956,6 +3474,3440 @@ class GameInfo {
     public void setWorking(boolean working) { this.isWorking = working; }
 }
 
+// Matches a fixed set of keywords against a name in one pass, ignoring case. The
+// keywords are compiled into an Aho-Corasick automaton with a full transition table
+// over the characters they use; any other character leads back to the start state.
+class KeywordMatcher {
+    // Character class per char; 0 means the char appears in no keyword. A char is wide
+    // enough for any keyword list, since case variants share a class.
+    private final char[] classes = new char[Character.MAX_VALUE + 1];
+    private final int classCount;
+    // transitions[state * classCount + class]
+    private final int[] transitions;
+    private final boolean[] accepting;
+    
+    public KeywordMatcher(java.util.Collection<String> keywords) {
+        int nextClass = 1;
+        for (String keyword : keywords) {
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                if (classes[c] == 0) {
+                    classes[c] = (char) nextClass;
+                    classes[Character.toUpperCase(c)] = (char) nextClass;
+                    nextClass++;
+                }
+            }
+        }
+        classCount = nextClass;
+        
+        // Trie of the keywords; -1 marks a missing edge until failure links fill it in
+        List<int[]> trie = new ArrayList<>();
+        List<Boolean> ends = new ArrayList<>();
+        trie.add(newState());
+        ends.add(false);
+        for (String keyword : keywords) {
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int c = classes[Character.toLowerCase(keyword.charAt(i))];
+                if (trie.get(state)[c] == -1) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    ends.add(false);
+                }
+                state = trie.get(state)[c];
+            }
+            ends.set(state, true);
+        }
+        
+        // Breadth-first, so each state's failure target is complete before it is used
+        int states = trie.size();
+        transitions = new int[states * classCount];
+        accepting = new boolean[states];
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        accepting[0] = ends.get(0);
+        for (int c = 0; c < classCount; c++) {
+            int next = trie.get(0)[c];
+            if (next > 0) {
+                transitions[c] = next;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            accepting[state] = ends.get(state) || accepting[failure[state]];
+            for (int c = 0; c < classCount; c++) {
+                int next = trie.get(state)[c];
+                if (next > 0) {
+                    failure[next] = transitions[failure[state] * classCount + c];
+                    transitions[state * classCount + c] = next;
+                    queue[tail++] = next;
+                } else {
+                    transitions[state * classCount + c] = transitions[failure[state] * classCount + c];
+                }
+            }
+        }
+    }
+    
+    private int[] newState() {
+        int[] edges = new int[classCount];
+        java.util.Arrays.fill(edges, -1);
+        edges[0] = 0;
+        return edges;
+    }
+    
+    public boolean matches(CharSequence text) {
+        int state = 0;
+        if (accepting[state]) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * classCount + classes[text.charAt(i)]];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+// Games found by the last scan, plus what each scanned directory held so the next
+// scan can skip listing directories that haven't changed since
+class GameCatalog {
+    private static final int MAGIC = 0x44464743; // "DFGC"
+    private static final int VERSION = 2;
+    
+    public static class DirRecord {
+        // Facts about the direct children; see the Main.DirFacts flag bits
+        final long modified;
+        final int fingerprint;
+        final int flags;
+        final List<GameInfo> games;
+        final List<String> subdirectories;
+        
+        public DirRecord(long modified, int fingerprint, int flags, List<GameInfo> games, List<String> subdirectories) {
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+            this.flags = flags;
+            this.games = games;
+            this.subdirectories = subdirectories;
+        }
+        
+        public boolean isCurrent(long modified, int fingerprint) {
+            return this.modified == modified && this.fingerprint == fingerprint;
+        }
+    }
+    
+    // Fingerprint of the detection settings (keywords) the records were made with
+    private final long configuration;
+    private final java.util.Map<String, DirRecord> directories;
+    private final List<GameInfo> games;
+    
+    public GameCatalog(long configuration, java.util.Map<String, DirRecord> directories, List<GameInfo> games) {
+        this.configuration = configuration;
+        this.directories = directories;
+        this.games = games;
+    }
+    
+    public static GameCatalog empty() {
+        return new GameCatalog(0, java.util.Collections.emptyMap(), java.util.Collections.emptyList());
+    }
+    
+    public long getConfiguration() {
+        return configuration;
+    }
+    
+    // Detection depends only on the effective keyword lists, not on where they came from,
+    // so an edit to the overrides file that keeps the same keywords keeps the records
+    public static long configurationFor(List<List<String>> keywordLists) {
+        long hash = 1125899906842597L;
+        for (List<String> keywords : keywordLists) {
+            for (String keyword : keywords) {
+                for (int i = 0; i < keyword.length(); i++) {
+                    hash = 31 * hash + keyword.charAt(i);
+                }
+                hash = 31 * hash + ',';
+            }
+            hash = 31 * hash + ';';
+        }
+        // 0 is the configuration of the empty catalog
+        return hash == 0 ? 1 : hash;
+    }
+    
+    // Identifies the directory itself, so one swapped in with an equal mtime isn't trusted
+    public static int fingerprintOf(java.nio.file.attribute.BasicFileAttributes attrs) {
+        return java.util.Objects.hashCode(attrs.fileKey());
+    }
+    
+    public DirRecord getDirectory(Path directory) {
+        return directories.get(directory.toString());
+    }
+    
+    public List<GameInfo> getGames() {
+        return games;
+    }
+    
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (java.io.DataOutputStream out = new java.io.DataOutputStream(
+                new java.io.BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(configuration);
+            writeGames(out, games);
+            out.writeInt(directories.size());
+            for (java.util.Map.Entry<String, DirRecord> entry : directories.entrySet()) {
+                DirRecord record = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(record.modified);
+                out.writeInt(record.fingerprint);
+                out.writeByte(record.flags);
+                writeGames(out, record.games);
+                out.writeInt(record.subdirectories.size());
+                for (String name : record.subdirectories) {
+                    out.writeUTF(name);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    public static GameCatalog load(Path file) throws IOException {
+        try (java.io.DataInputStream in = new java.io.DataInputStream(
+                new java.io.BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported catalog format: " + file);
+            }
+            long configuration = in.readLong();
+            List<GameInfo> games = readGames(in);
+            int count = in.readInt();
+            java.util.Map<String, DirRecord> directories = new java.util.HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long modified = in.readLong();
+                int fingerprint = in.readInt();
+                int flags = in.readByte();
+                List<GameInfo> dirGames = readGames(in);
+                String[] subdirectories = new String[in.readInt()];
+                for (int j = 0; j < subdirectories.length; j++) {
+                    subdirectories[j] = in.readUTF();
+                }
+                directories.put(path, new DirRecord(modified, fingerprint, flags, dirGames, List.of(subdirectories)));
+            }
+            return new GameCatalog(configuration, directories, games);
+        }
+    }
+    
+    private static void writeGames(java.io.DataOutputStream out, List<GameInfo> games) throws IOException {
+        out.writeInt(games.size());
+        for (GameInfo game : games) {
+            out.writeUTF(game.getName());
+            out.writeUTF(game.getType());
+            out.writeUTF(game.getPath().toString());
+            out.writeUTF(game.getDescription());
+            out.writeBoolean(game.isWorking());
+        }
+    }
+    
+    private static List<GameInfo> readGames(java.io.DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count == 0) {
+            return java.util.Collections.emptyList();
+        }
+        List<GameInfo> games = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            games.add(new GameInfo(in.readUTF(), in.readUTF(), Paths.get(in.readUTF()), in.readUTF(), in.readBoolean()));
+        }
+        return games;
+    }
+}
+
+class DirectoryWatcher {
+    public enum Kind { CREATED, MODIFIED, DELETED, OVERFLOW }
+    
+    public static class Change {
+        private final Kind kind;
+        private final Path path;
+        private final FileEntry entry;
+        
+        public Change(Kind kind, Path path, FileEntry entry) {
+            this.kind = kind;
+            this.path = path;
+            this.entry = entry;
+        }
+        
+        public Kind getKind() { return kind; }
+        public Path getPath() { return path; }
+        public FileEntry getEntry() { return entry; }
+    }
+    
+    // Events arriving within this window are delivered as one batch
+    private static final long COALESCE_MILLIS = 25;
+    
+    private final Path root;
+    private final boolean recursive;
+    private final BiFunction<Path, java.nio.file.attribute.BasicFileAttributes, FileEntry> entryFactory;
+    private final Consumer<List<Change>> listener;
+    private WatchService watchService;
+    private Thread thread;
+    
+    public DirectoryWatcher(Path root, boolean recursive, BiFunction<Path, java.nio.file.attribute.BasicFileAttributes, FileEntry> entryFactory,
+            Consumer<List<Change>> listener) {
+        this.root = root;
+        this.recursive = recursive;
+        this.entryFactory = entryFactory;
+        this.listener = listener;
+    }
+    
+    // Registering a large tree takes a while, so it happens on the watcher thread;
+    // registrationFailed is called from there if the directories can't all be watched
+    public void start(List<Path> directories, Consumer<IOException> registrationFailed) throws IOException {
+        watchService = root.getFileSystem().newWatchService();
+        thread = new Thread(() -> {
+            if (registerAll(directories, registrationFailed)) {
+                run();
+            }
+        }, "directory-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public void close() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+    
+    private boolean registerAll(List<Path> directories, Consumer<IOException> registrationFailed) {
+        try {
+            for (Path directory : directories) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                try {
+                    register(directory);
+                } catch (NoSuchFileException e) {
+                    // Deleted since the listing; its parent reports the deletion
+                }
+            }
+            return true;
+        } catch (ClosedWatchServiceException e) {
+            return false; // Closed while registering
+        } catch (IOException e) {
+            registrationFailed.accept(e);
+            return false;
+        }
+    }
+    
+    private void register(Path directory) throws IOException {
+        directory.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+    
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                List<Change> changes = new ArrayList<>();
+                do {
+                    collect(key, changes);
+                    key = watchService.poll(COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                
+                if (!changes.isEmpty()) {
+                    listener.accept(changes);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher was closed
+        }
+    }
+    
+    private void collect(WatchKey key, List<Change> changes) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changes.add(new Change(Kind.OVERFLOW, directory, null));
+                continue;
+            }
+            
+            Path path = directory.resolve((Path) event.context());
+            if (TrashReaper.isTrash(path)) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                changes.add(new Change(Kind.DELETED, path, null));
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                changes.add(new Change(Kind.CREATED, path, readEntry(path)));
+                if (recursive && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    registerNewTree(path, changes);
+                }
+            } else {
+                changes.add(new Change(Kind.MODIFIED, path, readEntry(path)));
+            }
+        }
+        key.reset();
+    }
+    
+    private void registerNewTree(Path directory, List<Change> changes) {
+        // Entries may have been created before the watch was in place, so report them too
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, java.nio.file.attribute.BasicFileAttributes attrs) throws IOException {
+                    register(dir);
+                    if (!dir.equals(directory)) {
+                        changes.add(new Change(Kind.CREATED, dir, entryFactory.apply(dir, attrs)));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                @Override
+                public FileVisitResult visitFile(Path file, java.nio.file.attribute.BasicFileAttributes attrs) {
+                    changes.add(new Change(Kind.CREATED, file, entryFactory.apply(file, attrs)));
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // Could not watch the new subtree; force a full reload
+            changes.add(new Change(Kind.OVERFLOW, directory, null));
+        }
+    }
+    
+    private FileEntry readEntry(Path path) {
+        try {
+            return entryFactory.apply(path, Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        } catch (IOException e) {
+            return null; // Already gone again
+        }
+    }
+}
+
+class ParallelTreeWalker {
+    public interface Visitor {
+        // Called from pool threads for every entry below the start directory.
+        // Returning false for a directory skips its contents.
+        boolean visit(Path path, java.nio.file.attribute.BasicFileAttributes attrs, int depth) throws IOException;
+        
+        // Unreadable directories and entries are skipped unless this rethrows
+        default void failed(Path path, IOException e) throws IOException {
+        }
+        
+        // Entries to visit instead of listing the directory (e.g. remembered from an
+        // earlier walk), or null to list it
+        default Iterable<Path> entries(Path directory) throws IOException {
+            return null;
+        }
+        
+        // Called once every entry of a directory has been visited; not for directories
+        // whose listing failed or was cut short by cancellation
+        default void listed(Path directory) {
+        }
+    }
+    
+    private static ParallelTreeWalker shared;
+    
+    private final ForkJoinPool pool;
+    
+    public ParallelTreeWalker(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+    
+    public static synchronized ParallelTreeWalker shared() {
+        if (shared == null) {
+            // Walking is bound by syscall latency, so allow more threads than cores by default
+            int parallelism = Integer.getInteger("docfinder.walker.parallelism",
+                Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+            shared = new ParallelTreeWalker(parallelism);
+        }
+        return shared;
+    }
+    
+    public void walk(Path start, int maxDepth, BooleanSupplier cancelled, Visitor visitor) throws IOException {
+        Walk walk = new Walk(maxDepth, cancelled, visitor);
+        DirectoryTask task = new DirectoryTask(walk, start, 0);
+        
+        // Nested walks from a visitor run inside the current pool instead of blocking a worker
+        if (ForkJoinTask.getPool() == pool) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+        
+        if (walk.failure != null) {
+            throw walk.failure;
+        }
+    }
+    
+    private static class Walk {
+        private final int maxDepth;
+        private final BooleanSupplier cancelled;
+        private final Visitor visitor;
+        private volatile IOException failure;
+        
+        Walk(int maxDepth, BooleanSupplier cancelled, Visitor visitor) {
+            this.maxDepth = maxDepth;
+            this.cancelled = cancelled;
+            this.visitor = visitor;
+        }
+        
+        boolean stopped() {
+            return failure != null || (cancelled != null && cancelled.getAsBoolean());
+        }
+        
+        synchronized void fail(IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+    
+    @SuppressWarnings("serial") // Fork/join tasks are never serialized
+    private static class DirectoryTask extends RecursiveAction {
+        private final Walk walk;
+        private final Path directory;
+        private final int depth;
+        
+        DirectoryTask(Walk walk, Path directory, int depth) {
+            this.walk = walk;
+            this.directory = directory;
+            this.depth = depth;
+        }
+        
+        @Override
+        protected void compute() {
+            if (walk.stopped()) {
+                return;
+            }
+            
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            Iterable<Path> entries;
+            try {
+                entries = walk.visitor.entries(directory);
+            } catch (IOException e) {
+                walk.fail(e);
+                return;
+            }
+            
+            boolean complete = false;
+            if (entries != null) {
+                complete = visitAll(entries, subtasks);
+            } else {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                    complete = visitAll(stream, subtasks);
+                } catch (IOException e) {
+                    failed(directory, e);
+                } catch (DirectoryIteratorException e) {
+                    failed(directory, e.getCause());
+                }
+            }
+            if (complete) {
+                walk.visitor.listed(directory);
+            }
+            
+            // One task per subdirectory; idle workers steal them
+            invokeAll(subtasks);
+        }
+        
+        // False unless every entry was visited: the walk stopped or an entry was unreadable
+        private boolean visitAll(Iterable<Path> entries, List<DirectoryTask> subtasks) {
+            boolean complete = true;
+            for (Path path : entries) {
+                if (walk.stopped()) {
+                    return false;
+                }
+                
+                java.nio.file.attribute.BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    failed(path, e);
+                    complete = false;
+                    continue;
+                }
+                
+                boolean descend;
+                try {
+                    descend = walk.visitor.visit(path, attrs, depth + 1);
+                } catch (IOException e) {
+                    walk.fail(e);
+                    return false;
+                }
+                if (descend && attrs.isDirectory() && depth + 1 < walk.maxDepth) {
+                    subtasks.add(new DirectoryTask(walk, path, depth + 1));
+                }
+            }
+            return complete;
+        }
+        
+        private void failed(Path path, IOException e) {
+            try {
+                walk.visitor.failed(path, e);
+            } catch (IOException rethrown) {
+                walk.fail(rethrown);
+            }
+        }
+    }
+}
+
+class FuzzyMatcher {
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+    
+    private static final int MATCH_SCORE = 16;
+    private static final int SEGMENT_START_BONUS = 32;
+    private static final int WORD_START_BONUS = 20;
+    private static final int CONSECUTIVE_BONUS = 12;
+    private static final int FILE_NAME_BONUS = 8;
+    private static final int GAP_PENALTY = 2;
+    private static final int MAX_GAP_PENALTY = 12;
+    // Score of an alignment that isn't possible; far enough from any real score not to overflow
+    private static final int UNREACHABLE = Integer.MIN_VALUE / 2;
+    // Below this many entries a single thread is faster than splitting the work
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    
+    private final char[] query;
+    
+    public FuzzyMatcher(String query) {
+        this.query = query.toLowerCase().toCharArray();
+    }
+    
+    // Returns NO_MATCH unless every query character appears in order in the text;
+    // otherwise the score of the best alignment, so a match that starts at a path
+    // segment or word wins over an earlier one buried inside a word
+    public int score(String text) {
+        int length = text.length();
+        int last = query.length - 1;
+        if (last < 0) {
+            return 0;
+        }
+        
+        // Forward pass finds the earliest position each query character can take...
+        int q = 0;
+        int first = -1;
+        for (int i = 0; i < length && q <= last; i++) {
+            if (Character.toLowerCase(text.charAt(i)) == query[q]) {
+                if (q == 0) {
+                    first = i;
+                }
+                q++;
+            }
+        }
+        if (q <= last) {
+            return NO_MATCH;
+        }
+        // ...and a backward pass the latest, so the alignment search covers only [first, end]
+        q = last;
+        int end = length - 1;
+        for (int i = length - 1; i >= 0; i--) {
+            if (Character.toLowerCase(text.charAt(i)) == query[q]) {
+                if (q == last) {
+                    end = i;
+                }
+                if (--q < 0) {
+                    break;
+                }
+            }
+        }
+        
+        // best[i]: best score of the query so far with its current character at i. A gap
+        // costs GAP_PENALTY per skipped character up to MAX_GAP_PENALTY, so the best
+        // predecessor is either a decaying running maximum or the capped prefix maximum.
+        int fileNameStart = Math.max(text.lastIndexOf('/'), text.lastIndexOf('\\')) + 1;
+        int span = end - first + 1;
+        int[] previous = new int[span];
+        int[] current = new int[span];
+        for (int i = 0; i < span; i++) {
+            char c = text.charAt(first + i);
+            previous[i] = Character.toLowerCase(c) == query[0] ? positionScore(text, first + i, c, fileNameStart) : UNREACHABLE;
+        }
+        for (q = 1; q <= last; q++) {
+            int decayed = UNREACHABLE;
+            int prefixMax = UNREACHABLE;
+            for (int i = 0; i < span; i++) {
+                if (i >= 2) {
+                    decayed = Math.max(decayed, previous[i - 2]) - GAP_PENALTY;
+                    prefixMax = Math.max(prefixMax, previous[i - 2]);
+                }
+                char c = text.charAt(first + i);
+                if (Character.toLowerCase(c) != query[q]) {
+                    current[i] = UNREACHABLE;
+                    continue;
+                }
+                int before = Math.max(decayed, prefixMax - MAX_GAP_PENALTY);
+                if (i >= 1 && previous[i - 1] > UNREACHABLE) {
+                    before = Math.max(before, previous[i - 1] + CONSECUTIVE_BONUS);
+                }
+                current[i] = before > UNREACHABLE / 2 ? before + positionScore(text, first + i, c, fileNameStart) : UNREACHABLE;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        
+        int best = UNREACHABLE;
+        for (int i = 0; i < span; i++) {
+            best = Math.max(best, previous[i]);
+        }
+        // Among otherwise equal matches prefer shorter paths
+        return best - length / 8;
+    }
+    
+    private static int positionScore(String text, int index, char c, int fileNameStart) {
+        return MATCH_SCORE + boundaryBonus(text, index, c) + (index >= fileNameStart ? FILE_NAME_BONUS : 0);
+    }
+    
+    // Returns the ids of the best matches, best first, or null if cancelled
+    public int[] rank(String[] names, int count, int limit, BooleanSupplier cancelled) {
+        int chunks = count < PARALLEL_THRESHOLD ? 1 : ForkJoinPool.getCommonPoolParallelism() * 4;
+        int chunkSize = Math.max(1, (count + chunks - 1) / chunks);
+        
+        // Each chunk keeps its own bounded heap; the heaps are merged afterwards
+        long[][] partial = IntStream.range(0, chunks)
+            .parallel()
+            .mapToObj(chunk -> topKeys(names, chunk * chunkSize, Math.min(count, (chunk + 1) * chunkSize), limit, cancelled))
+            .toArray(long[][]::new);
+        if (cancelled.getAsBoolean()) {
+            return null;
+        }
+        
+        long[] heap = new long[limit];
+        int size = 0;
+        for (long[] keys : partial) {
+            for (long key : keys) {
+                size = offer(heap, size, key);
+            }
+        }
+        
+        long[] best = java.util.Arrays.copyOf(heap, size);
+        java.util.Arrays.sort(best);
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = Integer.MAX_VALUE - (int) best[size - 1 - i];
+        }
+        return ids;
+    }
+    
+    private long[] topKeys(String[] names, int from, int to, int limit, BooleanSupplier cancelled) {
+        long[] heap = new long[limit];
+        int size = 0;
+        for (int id = from; id < to; id++) {
+            if ((id & 0xFFF) == 0 && cancelled.getAsBoolean()) {
+                break;
+            }
+            int score = score(names[id]);
+            if (score != NO_MATCH) {
+                // Score in the high half; ties go to the lower id
+                size = offer(heap, size, ((long) score << 32) | (Integer.MAX_VALUE - id));
+            }
+        }
+        return java.util.Arrays.copyOf(heap, size);
+    }
+    
+    // Min-heap of the largest keys seen so far; returns the new size
+    private static int offer(long[] heap, int size, long key) {
+        if (size < heap.length) {
+            int i = size++;
+            while (i > 0 && heap[(i - 1) / 2] > key) {
+                heap[i] = heap[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = key;
+        } else if (size > 0 && key > heap[0]) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= key) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = key;
+        }
+        return size;
+    }
+    
+    private static int boundaryBonus(String text, int index, char c) {
+        if (index == 0) {
+            return SEGMENT_START_BONUS;
+        }
+        char before = text.charAt(index - 1);
+        if (before == '/' || before == '\\') {
+            return SEGMENT_START_BONUS;
+        }
+        if (before == '_' || before == '-' || before == '.' || before == ' ') {
+            return WORD_START_BONUS;
+        }
+        if (Character.isLowerCase(before) && Character.isUpperCase(c)) {
+            return WORD_START_BONUS; // camelCase hump
+        }
+        return 0;
+    }
+}
+
+// Finds files containing a literal string, ignoring ASCII case. Files are scanned in
+// parallel with Boyer-Moore-Horspool, streamed through a per-thread buffer a chunk at
+// a time, so memory use doesn't depend on file size and nothing waits on GC to be freed.
+class ContentSearcher {
+    // Files are read through one reusable buffer per thread, a chunk at a time
+    private static final int READ_CHUNK_SIZE = 256 * 1024;
+    private static final int BINARY_PROBE_LENGTH = 8192;
+    private static final int MAX_REPORTED_LINES = 20;
+    private static final int[] FOLD = new int[256];
+    
+    static {
+        for (int b = 0; b < 256; b++) {
+            FOLD[b] = b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+        }
+    }
+    
+    // Line bookkeeping that carries over from one chunk of a file to the next
+    private static class LineState {
+        final int[] lines = new int[MAX_REPORTED_LINES];
+        int lineCount;
+        int line = 1;
+        // A match was found and the rest of its line hasn't been seen yet
+        boolean skippingLine;
+    }
+    
+    public static class Match {
+        final int file;
+        // First matching line numbers (1-based), at most MAX_REPORTED_LINES of them
+        final int[] lines;
+        final int lineCount;
+        
+        Match(int file, int[] lines, int lineCount) {
+            this.file = file;
+            this.lines = lines;
+            this.lineCount = lineCount;
+        }
+    }
+    
+    private static ContentSearcher shared;
+    
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final ThreadLocal<java.nio.ByteBuffer> readBuffers =
+        ThreadLocal.withInitial(() -> java.nio.ByteBuffer.allocate(READ_CHUNK_SIZE));
+    
+    public ContentSearcher(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.parallelism = parallelism;
+    }
+    
+    public static synchronized ContentSearcher shared() {
+        if (shared == null) {
+            shared = new ContentSearcher(Integer.getInteger("docfinder.search.contentThreads",
+                Runtime.getRuntime().availableProcessors()));
+        }
+        return shared;
+    }
+    
+    // Blocks until every file is scanned or the search is cancelled; matches are
+    // reported from pool threads as they are found. Returns the number of files matched.
+    // Only ASCII letters are matched ignoring case; anything else has to match the
+    // file's UTF-8 bytes exactly, so pass the query as typed rather than lowercased.
+    public int search(String query, Path[] files, long maxFileSize, BooleanSupplier cancelled,
+            Consumer<Match> matches) throws InterruptedException {
+        byte[] pattern = query.getBytes(StandardCharsets.UTF_8);
+        if (pattern.length == 0) {
+            return 0; // Nothing to look for; an empty pattern would never advance the scan
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = (byte) FOLD[pattern[i] & 0xFF];
+        }
+        
+        // Horspool shifts for the folded pattern; both cases of a letter share a shift
+        int[] shifts = new int[256];
+        java.util.Arrays.fill(shifts, pattern.length);
+        for (int i = 0; i < pattern.length - 1; i++) {
+            shifts[pattern[i] & 0xFF] = pattern.length - 1 - i;
+        }
+        
+        // Workers pull files one at a time so a few large files can't hold up a whole batch
+        java.util.concurrent.atomic.AtomicInteger next = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.atomic.AtomicInteger matched = new java.util.concurrent.atomic.AtomicInteger();
+        List<java.util.concurrent.Callable<Void>> workers = new ArrayList<>();
+        for (int w = 0; w < parallelism; w++) {
+            workers.add(() -> {
+                int file;
+                while ((file = next.getAndIncrement()) < files.length && !cancelled.getAsBoolean()) {
+                    Match match = scan(file, files[file], maxFileSize, pattern, shifts);
+                    if (match != null) {
+                        matched.incrementAndGet();
+                        matches.accept(match);
+                    }
+                }
+                return null;
+            });
+        }
+        pool.invokeAll(workers);
+        return matched.get();
+    }
+    
+    private Match scan(int file, Path path, long maxFileSize, byte[] pattern, int[] shifts) {
+        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < pattern.length || size > maxFileSize) {
+                return null;
+            }
+            
+            // A match can straddle two chunks, so the buffer must hold more than one pattern
+            java.nio.ByteBuffer data = readBuffers.get();
+            if (data.capacity() < pattern.length * 2) {
+                data = java.nio.ByteBuffer.allocate(pattern.length * 2);
+                readBuffers.set(data);
+            }
+            data.clear();
+            LineState state = new LineState();
+            boolean first = true;
+            boolean eof = false;
+            while (!eof) {
+                while (data.hasRemaining()) {
+                    if (channel.read(data) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                data.flip();
+                if (first && isBinary(data)) {
+                    return null;
+                }
+                first = false;
+                // Bytes from the first possible match onwards stay for the next chunk
+                data.position(find(data, pattern, shifts, state));
+                data.compact();
+            }
+            
+            if (state.lineCount == 0) {
+                return null;
+            }
+            return new Match(file, java.util.Arrays.copyOf(state.lines, Math.min(state.lineCount, MAX_REPORTED_LINES)),
+                state.lineCount);
+        } catch (IOException e) {
+            // Unreadable files and files that vanished since the listing are skipped
+            return null;
+        }
+    }
+    
+    private static boolean isBinary(java.nio.ByteBuffer data) {
+        int end = Math.min(data.limit(), BINARY_PROBE_LENGTH);
+        for (int i = 0; i < end; i++) {
+            if (data.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Scans data[0, limit) and returns how far it is done with; line numbers are
+    // counted only up to that point, never ahead of the last match
+    private static int find(java.nio.ByteBuffer data, byte[] pattern, int[] shifts, LineState state) {
+        int last = pattern.length - 1;
+        int limit = data.limit();
+        int counted = 0;
+        
+        int pos = 0;
+        while (true) {
+            if (state.skippingLine) {
+                // One hit per line is enough; carry on from the start of the next line
+                while (pos < limit && data.get(pos) != '\n') {
+                    pos++;
+                }
+                if (pos == limit) {
+                    return limit;
+                }
+                state.line++;
+                state.skippingLine = false;
+                counted = ++pos;
+            }
+            if (pos + last >= limit) {
+                break;
+            }
+            
+            int j = last;
+            while (j >= 0 && FOLD[data.get(pos + j) & 0xFF] == (pattern[j] & 0xFF)) {
+                j--;
+            }
+            if (j >= 0) {
+                pos += shifts[FOLD[data.get(pos + last) & 0xFF]];
+                continue;
+            }
+            
+            for (int i = counted; i < pos; i++) {
+                if (data.get(i) == '\n') {
+                    state.line++;
+                }
+            }
+            if (state.lineCount < MAX_REPORTED_LINES) {
+                state.lines[state.lineCount] = state.line;
+            }
+            state.lineCount++;
+            state.skippingLine = true;
+            pos += pattern.length;
+            counted = pos;
+        }
+        
+        for (int i = counted; i < pos; i++) {
+            if (data.get(i) == '\n') {
+                state.line++;
+            }
+        }
+        return pos;
+    }
+}
+
+// Fills a staging area with copies of files as cheaply as the filesystem allows:
+// copy-on-write clones where supported, hard links for files nothing writes to, and
+// plain copies otherwise. What works is probed once per filesystem.
+class FileStager {
+    public enum Method { CLONE, LINK, COPY }
+    
+    // Media and fonts are only ever read by the games that ship them
+    private static final java.util.Set<String> ASSET_EXTENSIONS = java.util.Set.of(
+        "png", "jpg", "jpeg", "gif", "bmp", "webp", "tga", "dds", "ico", "svg", "psd",
+        "ogg", "wav", "mp3", "flac", "m4a", "aac", "opus", "mid", "midi",
+        "ttf", "otf", "woff", "woff2", "fnt", "mp4", "webm", "mkv", "avi", "mov");
+    private static final boolean MAC_OS = System.getProperty("os.name").toLowerCase().contains("mac");
+    private static FileStager shared;
+    
+    private final java.util.Map<FileStore, Boolean> cloneSupport = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.Map<FileStore, Boolean> linkSupport = new java.util.concurrent.ConcurrentHashMap<>();
+    
+    public static synchronized FileStager shared() {
+        if (shared == null) {
+            shared = new FileStager();
+        }
+        return shared;
+    }
+    
+    // Stages source.resolve(r) as target.resolve(r) for each relative path. Existing
+    // targets are removed first so a shared inode is never written through. Returns
+    // how many files each method handled, indexed by Method.ordinal().
+    public int[] stage(Path source, Path target, List<Path> files, CopyEngine.Progress progress) throws IOException {
+        int[] counts = new int[Method.values().length];
+        if (files.isEmpty()) {
+            return counts;
+        }
+        for (Path relative : files) {
+            Files.deleteIfExists(target.resolve(relative.toString()));
+        }
+        
+        // Clones and links only work within one filesystem
+        FileStore store = Files.getFileStore(target);
+        boolean sameStore = store.equals(Files.getFileStore(source));
+        List<Path> pending = files;
+        if (sameStore && cloneSupport.computeIfAbsent(store, s -> probe(target, this::clone))) {
+            pending = cloneAll(source, target, pending);
+            counts[Method.CLONE.ordinal()] = files.size() - pending.size();
+        }
+        
+        List<Path> copies = new ArrayList<>();
+        boolean canLink = sameStore && linkSupport.computeIfAbsent(store, s -> probe(target, Files::createLink));
+        for (Path relative : pending) {
+            Path from = source.resolve(relative);
+            Path to = target.resolve(relative.toString());
+            if (canLink && isShareable(from)) {
+                try {
+                    Files.createLink(to, from);
+                    counts[Method.LINK.ordinal()]++;
+                    continue;
+                } catch (IOException | UnsupportedOperationException e) {
+                    // Fall back to a copy for this file
+                }
+            }
+            copies.add(relative);
+        }
+        
+        long[] sizes = new long[copies.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = Files.size(source.resolve(copies.get(i)));
+        }
+        List<CopyEngine.Failure> failures;
+        try {
+            failures = CopyEngine.shared().copy(source, target, copies, sizes, progress, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("Staging interrupted");
+        }
+        // A game with missing files isn't worth launching
+        if (!failures.isEmpty()) {
+            CopyEngine.Failure first = failures.get(0);
+            throw new IOException("Could not stage " + failures.size() + " file(s), e.g. " + 
+                first.getPath() + ": " + first.getError().getMessage(), first.getError());
+        }
+        counts[Method.COPY.ordinal()] = copies.size();
+        return counts;
+    }
+    
+    // A hard link shares the source's bytes, so only files nothing writes to qualify
+    private static boolean isShareable(Path file) {
+        String name = file.getFileName().toString();
+        int lastDot = name.lastIndexOf('.');
+        return (lastDot > 0 && ASSET_EXTENSIONS.contains(name.substring(lastDot + 1).toLowerCase()))
+            || !Files.isWritable(file);
+    }
+    
+    // Clones files with one cp run per target directory; returns the ones that weren't cloned
+    private List<Path> cloneAll(Path source, Path target, List<Path> files) {
+        java.util.Map<Path, List<Path>> byDirectory = new java.util.LinkedHashMap<>();
+        for (Path relative : files) {
+            byDirectory.computeIfAbsent(target.resolve(relative.toString()).getParent(), d -> new ArrayList<>()).add(relative);
+        }
+        
+        List<Path> failed = new ArrayList<>();
+        for (java.util.Map.Entry<Path, List<Path>> group : byDirectory.entrySet()) {
+            List<String> command = new ArrayList<>(cloneCommand());
+            for (Path relative : group.getValue()) {
+                command.add(source.resolve(relative).toString());
+            }
+            command.add(group.getKey().toString());
+            // A failed or interrupted cp can leave empty or truncated files behind, so
+            // only targets of a clean run whose size matches the source count as cloned
+            boolean succeeded = run(command);
+            for (Path relative : group.getValue()) {
+                Path to = target.resolve(relative.toString());
+                if (!succeeded || !isComplete(source.resolve(relative), to)) {
+                    try {
+                        Files.deleteIfExists(to);
+                    } catch (IOException e) {
+                        System.err.println("Could not remove partial clone " + to + ": " + e.getMessage());
+                    }
+                    failed.add(relative);
+                }
+            }
+        }
+        return failed;
+    }
+    
+    private static boolean isComplete(Path from, Path to) {
+        try {
+            return Files.size(to) == Files.size(from);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    private void clone(Path to, Path from) throws IOException {
+        List<String> command = new ArrayList<>(cloneCommand());
+        command.add(from.toString());
+        command.add(to.toString());
+        if (!run(command)) {
+            throw new IOException("Clone not supported");
+        }
+    }
+    
+    private static List<String> cloneCommand() {
+        // Both keep timestamps, which the staged-copy check compares
+        return MAC_OS ? List.of("cp", "-c", "-p") : List.of("cp", "--reflink=always", "--preserve=timestamps,mode");
+    }
+    
+    private static boolean run(List<String> command) {
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    private interface LinkOperation {
+        void apply(Path to, Path from) throws IOException;
+    }
+    
+    // Tries an operation on two scratch files in the target directory
+    private static boolean probe(Path directory, LinkOperation operation) {
+        Path from = null;
+        Path to = null;
+        try {
+            from = Files.createTempFile(directory, ".stage-probe", null);
+            Files.write(from, new byte[] {1});
+            to = from.resolveSibling(from.getFileName() + ".copy");
+            operation.apply(to, from);
+            return Files.exists(to);
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        } finally {
+            try {
+                if (to != null) {
+                    Files.deleteIfExists(to);
+                }
+                if (from != null) {
+                    Files.deleteIfExists(from);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not remove staging probe: " + e.getMessage());
+            }
+        }
+    }
+}
+
+// Copies files with FileChannel.transferTo, so the kernel moves the bytes without them
+// passing through the Java heap. Large files get a task each and small ones are grouped
+// into batches; a bounded pool runs them. Failed files are reported, not fatal.
+class CopyEngine {
+    public interface Progress {
+        void update(long bytesCopied, long bytesTotal, int filesCopied, int filesTotal);
+    }
+    
+    public static class Failure {
+        private final Path path;
+        private final IOException error;
+        
+        public Failure(Path path, IOException error) {
+            this.path = path;
+            this.error = error;
+        }
+        
+        public Path getPath() { return path; }
+        public IOException getError() { return error; }
+    }
+    
+    private static final long SMALL_FILE_SIZE = 256 * 1024;
+    private static final long BATCH_BYTES = 4L * 1024 * 1024;
+    private static final int BATCH_FILES = 64;
+    // Large files report progress after each chunk
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+    private static CopyEngine shared;
+    
+    private final ForkJoinPool pool;
+    
+    public CopyEngine(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+    
+    public static synchronized CopyEngine shared() {
+        if (shared == null) {
+            shared = new CopyEngine(Integer.getInteger("docfinder.copy.parallelism", 4));
+        }
+        return shared;
+    }
+    
+    // Copies everything below source into target, which is created if needed
+    public List<Failure> copyTree(Path source, Path target, Progress progress, BooleanSupplier cancelled)
+            throws IOException, InterruptedException {
+        List<Failure> failures = java.util.Collections.synchronizedList(new ArrayList<>());
+        java.util.Map<Path, Long> files = new java.util.concurrent.ConcurrentHashMap<>();
+        List<Path> directories = java.util.Collections.synchronizedList(new ArrayList<>());
+        ParallelTreeWalker.shared().walk(source, Integer.MAX_VALUE, cancelled, new ParallelTreeWalker.Visitor() {
+            @Override
+            public boolean visit(Path path, java.nio.file.attribute.BasicFileAttributes attrs, int depth) {
+                if (attrs.isDirectory()) {
+                    directories.add(source.relativize(path));
+                } else {
+                    files.put(source.relativize(path), attrs.size());
+                }
+                return true;
+            }
+            
+            @Override
+            public void failed(Path path, IOException e) {
+                failures.add(new Failure(path, e));
+            }
+        });
+        
+        Files.createDirectories(target);
+        java.util.Collections.sort(directories);
+        for (Path relative : directories) {
+            try {
+                Files.createDirectories(target.resolve(relative.toString()));
+            } catch (IOException e) {
+                failures.add(new Failure(source.resolve(relative), e));
+            }
+        }
+        
+        List<Path> paths = new ArrayList<>(files.keySet());
+        long[] sizes = new long[paths.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = files.get(paths.get(i));
+        }
+        failures.addAll(copy(source, target, paths, sizes, progress, cancelled));
+        return failures;
+    }
+    
+    // Copies source.resolve(r) to target.resolve(r) for each relative path; target
+    // directories must already exist. sizes[i] is the expected size of files[i].
+    public List<Failure> copy(Path source, Path target, List<Path> files, long[] sizes, Progress progress,
+            BooleanSupplier cancelled) throws InterruptedException {
+        long totalBytes = 0;
+        for (long size : sizes) {
+            totalBytes += size;
+        }
+        Transfer transfer = new Transfer(source, target, files.size(), totalBytes, progress, cancelled);
+        
+        List<java.util.concurrent.Callable<Void>> tasks = new ArrayList<>();
+        List<Path> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if (sizes[i] >= SMALL_FILE_SIZE) {
+                tasks.add(transfer.task(List.of(files.get(i))));
+                continue;
+            }
+            batch.add(files.get(i));
+            batchBytes += sizes[i];
+            if (batch.size() >= BATCH_FILES || batchBytes >= BATCH_BYTES) {
+                tasks.add(transfer.task(batch));
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            tasks.add(transfer.task(batch));
+        }
+        
+        pool.invokeAll(tasks);
+        return new ArrayList<>(transfer.failures);
+    }
+    
+    private static class Transfer {
+        private final Path source;
+        private final Path target;
+        private final int totalFiles;
+        private final long totalBytes;
+        private final Progress progress;
+        private final BooleanSupplier cancelled;
+        private final java.util.concurrent.atomic.AtomicLong bytesCopied = new java.util.concurrent.atomic.AtomicLong();
+        private final java.util.concurrent.atomic.AtomicInteger filesCopied = new java.util.concurrent.atomic.AtomicInteger();
+        private final java.util.Queue<Failure> failures = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        
+        Transfer(Path source, Path target, int totalFiles, long totalBytes, Progress progress, BooleanSupplier cancelled) {
+            this.source = source;
+            this.target = target;
+            this.totalFiles = totalFiles;
+            this.totalBytes = totalBytes;
+            this.progress = progress;
+            this.cancelled = cancelled;
+        }
+        
+        java.util.concurrent.Callable<Void> task(List<Path> files) {
+            return () -> {
+                for (Path relative : files) {
+                    if (cancelled != null && cancelled.getAsBoolean()) {
+                        break;
+                    }
+                    Path from = source.resolve(relative);
+                    Path to = target.resolve(relative.toString());
+                    try {
+                        copyFile(from, to);
+                        filesCopied.incrementAndGet();
+                        report();
+                    } catch (IOException | RuntimeException e) {
+                        // Anything thrown here would otherwise skip the rest of the batch unreported
+                        failures.add(new Failure(from, e instanceof IOException ? (IOException) e : new IOException(e.toString(), e)));
+                        try {
+                            // A partial copy must not look like a finished one
+                            if (!Files.isDirectory(to, LinkOption.NOFOLLOW_LINKS)) {
+                                Files.deleteIfExists(to);
+                            }
+                        } catch (IOException cleanup) {
+                            System.err.println("Could not remove partial copy: " + cleanup.getMessage());
+                        }
+                    }
+                }
+                return null;
+            };
+        }
+        
+        private void copyFile(Path from, Path to) throws IOException {
+            java.nio.file.attribute.BasicFileAttributes attrs =
+                Files.readAttributes(from, java.nio.file.attribute.BasicFileAttributes.class);
+            try (java.nio.channels.FileChannel in = java.nio.channels.FileChannel.open(from, StandardOpenOption.READ);
+                 java.nio.channels.FileChannel out = java.nio.channels.FileChannel.open(to, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    long sent = in.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), out);
+                    if (sent <= 0) {
+                        // The file shrank while being copied
+                        break;
+                    }
+                    position += sent;
+                    bytesCopied.addAndGet(sent);
+                    if (size > TRANSFER_CHUNK) {
+                        report();
+                    }
+                }
+            }
+            
+            // Same as COPY_ATTRIBUTES: the mtime for later syncs, permissions so scripts stay executable
+            Files.setLastModifiedTime(to, attrs.lastModifiedTime());
+            try {
+                Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX filesystem
+            }
+        }
+        
+        private void report() {
+            if (progress != null) {
+                progress.update(bytesCopied.get(), totalBytes, filesCopied.get(), totalFiles);
+            }
+        }
+    }
+}
+
+// Deletes directory trees without making the caller wait: the tree is first renamed into a
+// hidden trash directory beside it (same filesystem, so the rename is atomic), then a
+// background pool removes the contents, one task per subdirectory.
+class TrashReaper {
+    public static final String TRASH_NAME = ".docfinder-trash";
+    // Passes over a trash directory before leftovers wait for the next reap, and the
+    // pause before each retry (multiplied by the pass number)
+    private static final int REAP_PASSES = 3;
+    private static final long REAP_RETRY_MILLIS = 250;
+    private static TrashReaper shared;
+    
+    private final ForkJoinPool pool;
+    // Trash directories with a reap in flight
+    private final java.util.Set<Path> reaping = new java.util.HashSet<>();
+    private final java.util.concurrent.atomic.AtomicLong counter = new java.util.concurrent.atomic.AtomicLong();
+    
+    public TrashReaper(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+    
+    public static synchronized TrashReaper shared() {
+        if (shared == null) {
+            shared = new TrashReaper(Integer.getInteger("docfinder.delete.parallelism", 4));
+        }
+        return shared;
+    }
+    
+    public static boolean isTrash(Path path) {
+        Path name = path.getFileName();
+        return name != null && TRASH_NAME.equals(name.toString());
+    }
+    
+    // Files under root whose name ends with suffix, at most maxDepth levels down. Trash
+    // directories are skipped, and so are entries the reaper deletes during the walk.
+    public static List<Path> findFiles(Path root, int maxDepth, String suffix) throws IOException {
+        List<Path> found = new ArrayList<>();
+        Files.walkFileTree(root, java.util.EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, java.nio.file.attribute.BasicFileAttributes attrs) {
+                return isTrash(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFile(Path file, java.nio.file.attribute.BasicFileAttributes attrs) {
+                if (!attrs.isDirectory() && file.toString().endsWith(suffix)) {
+                    found.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (file.equals(root)) {
+                    throw e;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return found;
+    }
+    
+    // Removes path from view immediately and deletes it in the background. Falls back to
+    // deleting in place when the rename isn't possible (e.g. path is a mount point).
+    public void delete(Path path) throws IOException {
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            Files.delete(path);
+            return;
+        }
+        
+        Path trash = path.toAbsolutePath().getParent().resolve(TRASH_NAME);
+        Path moved = trash.resolve(path.getFileName() + "." + System.nanoTime() + "." + counter.incrementAndGet());
+        try {
+            synchronized (this) {
+                Files.createDirectories(trash);
+                Files.move(path, moved, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not move to trash, deleting in place: " + e.getMessage());
+            pool.invoke(new ReapTask(path));
+            if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                throw new IOException("Could not delete " + path);
+            }
+            return;
+        }
+        reap(trash);
+    }
+    
+    // Empties a trash directory in the background, including one left over from an earlier run
+    public void reap(Path trash) {
+        synchronized (this) {
+            if (!reaping.add(trash)) {
+                return;
+            }
+        }
+        pool.execute(() -> {
+            for (int pass = 1; ; pass++) {
+                new ReapTask(trash).invoke();
+                synchronized (this) {
+                    // Anything moved in while reaping gets another pass; otherwise the
+                    // trash directory itself is gone and the reap is over
+                    boolean empty = true;
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(trash)) {
+                        empty = !stream.iterator().hasNext();
+                        if (empty) {
+                            Files.delete(trash);
+                        }
+                    } catch (NoSuchFileException e) {
+                        // Already gone
+                    } catch (IOException e) {
+                        System.err.println("Could not empty trash " + trash + ": " + e.getMessage());
+                        empty = true;
+                    }
+                    // Entries that can't be deleted (permissions, files held open) are left
+                    // for the next reap of this trash instead of being retried forever
+                    if (empty || pass == REAP_PASSES) {
+                        if (!empty) {
+                            System.err.println("Giving up on emptying " + trash + " for now");
+                        }
+                        reaping.remove(trash);
+                        return;
+                    }
+                }
+                try {
+                    Thread.sleep(REAP_RETRY_MILLIS * pass);
+                } catch (InterruptedException e) {
+                    synchronized (this) {
+                        reaping.remove(trash);
+                    }
+                    return;
+                }
+            }
+        });
+    }
+    
+    // Deletes files inline and forks subdirectories, then removes the directory once
+    // they are done. Failures are logged and leave the entry behind.
+    @SuppressWarnings("serial") // Fork/join tasks are never serialized
+    private static class ReapTask extends RecursiveAction {
+        private final Path directory;
+        
+        ReapTask(Path directory) {
+            this.directory = directory;
+        }
+        
+        @Override
+        protected void compute() {
+            List<ReapTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        ReapTask task = new ReapTask(entry);
+                        task.fork();
+                        subtasks.add(task);
+                    } else {
+                        delete(entry);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Could not list " + directory + ": " + e.getMessage());
+            }
+            for (ReapTask task : subtasks) {
+                task.join();
+            }
+            // The top-level trash directory is removed by reap() under its lock
+            if (!isTrash(directory)) {
+                delete(directory);
+            }
+        }
+        
+        private static void delete(Path path) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Could not delete " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
+
+// Compiles with javax.tools inside this JVM, so repeat builds skip javac's startup and run
+// on already-warm compiler code. The file manager and its caches of the platform classes
+// are shared between builds; it isn't thread-safe, so builds take turns.
+class InProcessCompiler {
+    private static InProcessCompiler shared;
+    
+    private final javax.tools.JavaCompiler compiler;
+    private final javax.tools.StandardJavaFileManager fileManager;
+    
+    private InProcessCompiler(javax.tools.JavaCompiler compiler) {
+        this.compiler = compiler;
+        this.fileManager = compiler == null ? null : compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+    }
+    
+    public static synchronized InProcessCompiler shared() {
+        if (shared == null) {
+            // A plain JRE has no compiler; callers then fall back to the javac command
+            boolean enabled = Boolean.parseBoolean(System.getProperty("docfinder.compile.inProcess", "true"));
+            shared = new InProcessCompiler(enabled ? javax.tools.ToolProvider.getSystemJavaCompiler() : null);
+        }
+        return shared;
+    }
+    
+    // What a build produced and used, per source file. Sources the compiler pulled in
+    // on its own (from the class path) are included.
+    public static class Units {
+        // Binary names of the classes written for each source
+        public final java.util.Map<Path, List<String>> classes = new java.util.HashMap<>();
+        // Top-level types declared in each source, and top-level types its code refers to
+        public final java.util.Map<Path, java.util.Set<String>> declared = new java.util.HashMap<>();
+        public final java.util.Map<Path, java.util.Set<String>> referenced = new java.util.HashMap<>();
+    }
+    
+    public boolean isAvailable() {
+        return compiler != null;
+    }
+    
+    // Same as "javac -cp <outputDir> -d <outputDir> files"; diagnostics are passed to
+    // output as they are reported, with paths relative to baseDir. units, if given, is
+    // filled with what each compiled source produced and depends on.
+    public synchronized boolean compile(Path baseDir, List<Path> files, Path outputDir, List<String> options,
+            Consumer<String> output, Units units) throws IOException {
+        fileManager.setLocationFromPaths(javax.tools.StandardLocation.CLASS_OUTPUT, List.of(outputDir));
+        fileManager.setLocationFromPaths(javax.tools.StandardLocation.CLASS_PATH, List.of(outputDir));
+        
+        javax.tools.DiagnosticListener<javax.tools.JavaFileObject> listener = diagnostic -> {
+            StringBuilder line = new StringBuilder();
+            if (diagnostic.getSource() != null) {
+                Path source = Paths.get(diagnostic.getSource().toUri());
+                line.append(source.startsWith(baseDir) ? baseDir.relativize(source) : source);
+                if (diagnostic.getLineNumber() != javax.tools.Diagnostic.NOPOS) {
+                    line.append(':').append(diagnostic.getLineNumber());
+                }
+                line.append(": ");
+            }
+            switch (diagnostic.getKind()) {
+                case ERROR:
+                    line.append("error: ");
+                    break;
+                case WARNING:
+                case MANDATORY_WARNING:
+                    line.append("warning: ");
+                    break;
+                default:
+                    line.append("Note: ");
+                    break;
+            }
+            line.append(diagnostic.getMessage(null));
+            for (String part : line.toString().split("\\R")) {
+                output.accept(part);
+            }
+        };
+        
+        // Anything the compiler prints outside of diagnostics
+        java.io.StringWriter extra = new java.io.StringWriter();
+        try {
+            javax.tools.JavaFileManager manager = units == null ? fileManager : recordingManager(units);
+            javax.tools.JavaCompiler.CompilationTask task = compiler.getTask(extra, manager, listener, options, null,
+                fileManager.getJavaFileObjectsFromPaths(files));
+            if (units != null) {
+                recordReferences((com.sun.source.util.JavacTask) task, units);
+            }
+            return task.call();
+        } finally {
+            fileManager.flush();
+            String text = extra.toString();
+            if (!text.isEmpty()) {
+                for (String part : text.split("\\R")) {
+                    output.accept(part);
+                }
+            }
+        }
+    }
+    
+    // Notes which source each class file is written for
+    private javax.tools.JavaFileManager recordingManager(Units units) {
+        return new javax.tools.ForwardingJavaFileManager<javax.tools.JavaFileManager>(fileManager) {
+            @Override
+            public javax.tools.JavaFileObject getJavaFileForOutput(javax.tools.JavaFileManager.Location location,
+                    String className, javax.tools.JavaFileObject.Kind kind, javax.tools.FileObject sibling) throws IOException {
+                if (kind == javax.tools.JavaFileObject.Kind.CLASS && sibling != null) {
+                    units.classes.computeIfAbsent(Paths.get(sibling.toUri()), k -> new ArrayList<>()).add(className);
+                }
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+            }
+        };
+    }
+    
+    // After each top-level class is analyzed, resolves every name in it to the top-level
+    // type it belongs to. This also catches constants, which javac inlines into the caller.
+    private static void recordReferences(com.sun.source.util.JavacTask task, Units units) {
+        com.sun.source.util.Trees trees = com.sun.source.util.Trees.instance(task);
+        task.addTaskListener(new com.sun.source.util.TaskListener() {
+            @Override
+            public void finished(com.sun.source.util.TaskEvent event) {
+                if (event.getKind() != com.sun.source.util.TaskEvent.Kind.ANALYZE || event.getTypeElement() == null) {
+                    return;
+                }
+                Path source = Paths.get(event.getSourceFile().toUri());
+                units.declared.computeIfAbsent(source, k -> new java.util.HashSet<>())
+                    .add(event.getTypeElement().getQualifiedName().toString());
+                java.util.Set<String> referenced = units.referenced.computeIfAbsent(source, k -> new java.util.HashSet<>());
+                com.sun.source.util.TreePath path = trees.getPath(event.getTypeElement());
+                new com.sun.source.util.TreePathScanner<Void, Void>() {
+                    @Override
+                    public Void visitIdentifier(com.sun.source.tree.IdentifierTree node, Void unused) {
+                        record(trees.getElement(getCurrentPath()));
+                        return super.visitIdentifier(node, unused);
+                    }
+                    
+                    @Override
+                    public Void visitMemberSelect(com.sun.source.tree.MemberSelectTree node, Void unused) {
+                        record(trees.getElement(getCurrentPath()));
+                        return super.visitMemberSelect(node, unused);
+                    }
+                    
+                    private void record(javax.lang.model.element.Element element) {
+                        javax.lang.model.element.Element type = null;
+                        while (element != null && element.getKind() != javax.lang.model.element.ElementKind.PACKAGE
+                                && element.getKind() != javax.lang.model.element.ElementKind.MODULE) {
+                            if (element instanceof javax.lang.model.element.TypeElement) {
+                                type = element;
+                            }
+                            element = element.getEnclosingElement();
+                        }
+                        if (type != null) {
+                            referenced.add(((javax.lang.model.element.TypeElement) type).getQualifiedName().toString());
+                        }
+                    }
+                }.scan(path, null);
+            }
+        });
+    }
+}
+
+// Remembers, per project, a content hash, the class files and the type references of each
+// source, so a build only recompiles the sources that changed and the ones depending on them
+class BuildCache {
+    private static final int MAGIC = 0x44464243; // "DFBC"
+    private static final int VERSION = 1;
+    
+    public static class SourceRecord {
+        final long size;
+        final long modified;
+        final long hash;
+        final List<String> classes;
+        final List<String> declared;
+        final List<String> referenced;
+        
+        public SourceRecord(long size, long modified, long hash, List<String> classes, List<String> declared,
+                List<String> referenced) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.classes = classes;
+            this.declared = declared;
+            this.referenced = referenced;
+        }
+    }
+    
+    // What a build has to do
+    public static class Plan {
+        // Sources to compile: changed ones first, then the unchanged ones that depend on them
+        public final List<Path> compile = new ArrayList<>();
+        public final int changed;
+        // Class files of recompiled or deleted sources, to remove before compiling
+        public final List<Path> staleClasses;
+        private final java.util.Map<Path, long[]> stats;
+        
+        Plan(List<Path> compile, int changed, List<Path> staleClasses, java.util.Map<Path, long[]> stats) {
+            this.compile.addAll(compile);
+            this.changed = changed;
+            this.staleClasses = staleClasses;
+            this.stats = stats;
+        }
+        
+        public boolean isUpToDate() {
+            return compile.isEmpty() && staleClasses.isEmpty();
+        }
+    }
+    
+    // Compiler version and output directory the records are valid for
+    private final String configuration;
+    private final java.util.Map<String, SourceRecord> sources;
+    
+    public BuildCache(String configuration, java.util.Map<String, SourceRecord> sources) {
+        this.configuration = configuration;
+        this.sources = sources;
+    }
+    
+    public static String configurationFor(Path outputDir) {
+        return Runtime.version() + "|" + outputDir.toAbsolutePath().normalize();
+    }
+    
+    // Names the cache after the source directory only; whether its records are still valid
+    // is decided per source from size, mtime and content hash in plan()
+    public static String fileNameFor(Path sourceDir) {
+        String path = sourceDir.toAbsolutePath().normalize().toString();
+        long hash = 1125899906842597L;
+        for (int i = 0; i < path.length(); i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        return Long.toHexString(hash) + ".build";
+    }
+    
+    // Reads the cache, or starts an empty one if it is missing, unreadable or was made for
+    // another compiler or output directory
+    public static BuildCache open(Path file, String configuration) {
+        if (Files.exists(file)) {
+            try {
+                BuildCache cache = load(file);
+                if (cache.configuration.equals(configuration)) {
+                    return cache;
+                }
+            } catch (IOException e) {
+                System.err.println("Could not read build cache: " + e.getMessage());
+            }
+        }
+        return new BuildCache(configuration, new java.util.HashMap<>());
+    }
+    
+    public Plan plan(List<Path> files, Path outputDir) throws IOException {
+        java.util.Set<Path> current = new java.util.LinkedHashSet<>();
+        for (Path file : files) {
+            current.add(file.toAbsolutePath().normalize());
+        }
+        
+        // Size and mtime decide first; only when they differ is the content hashed, so a
+        // file that was saved without edits isn't recompiled
+        java.util.Map<Path, long[]> stats = new java.util.HashMap<>();
+        java.util.Set<Path> changed = new java.util.LinkedHashSet<>();
+        for (Path file : current) {
+            java.nio.file.attribute.BasicFileAttributes attrs =
+                Files.readAttributes(file, java.nio.file.attribute.BasicFileAttributes.class);
+            long size = attrs.size();
+            long modified = attrs.lastModifiedTime().toMillis();
+            SourceRecord record = sources.get(file.toString());
+            long hash;
+            if (record != null && record.size == size && record.modified == modified) {
+                hash = record.hash;
+            } else {
+                hash = hash(file);
+            }
+            stats.put(file, new long[] {size, modified, hash});
+            if (record == null || record.hash != hash || !outputsExist(record, outputDir)) {
+                changed.add(file);
+            }
+        }
+        
+        // Types whose definition may have changed or gone away
+        java.util.Set<String> affected = new java.util.HashSet<>();
+        List<Path> staleClasses = new ArrayList<>();
+        for (java.util.Map.Entry<String, SourceRecord> entry : sources.entrySet()) {
+            Path file = Paths.get(entry.getKey());
+            if (!current.contains(file) || changed.contains(file)) {
+                affected.addAll(entry.getValue().declared);
+                addClassFiles(entry.getValue(), outputDir, staleClasses);
+            }
+        }
+        
+        // Recompiling a user can change what it exposes in turn: a constant computed from
+        // an affected one, or members inherited from an affected supertype. The records don't
+        // say which, so users of users are followed until nothing new is reached.
+        java.util.Map<String, List<Path>> users = new java.util.HashMap<>();
+        for (Path file : current) {
+            SourceRecord record = sources.get(file.toString());
+            if (record != null && !changed.contains(file)) {
+                for (String type : record.referenced) {
+                    users.computeIfAbsent(type, k -> new ArrayList<>()).add(file);
+                }
+            }
+        }
+        List<Path> compile = new ArrayList<>(changed);
+        java.util.Set<Path> queued = new java.util.HashSet<>(changed);
+        java.util.ArrayDeque<String> pending = new java.util.ArrayDeque<>(affected);
+        java.util.Set<String> seen = new java.util.HashSet<>(affected);
+        while (!pending.isEmpty()) {
+            for (Path file : users.getOrDefault(pending.poll(), List.of())) {
+                if (queued.add(file)) {
+                    SourceRecord record = sources.get(file.toString());
+                    compile.add(file);
+                    addClassFiles(record, outputDir, staleClasses);
+                    for (String type : record.declared) {
+                        if (seen.add(type)) {
+                            pending.add(type);
+                        }
+                    }
+                }
+            }
+        }
+        return new Plan(compile, changed.size(), staleClasses, stats);
+    }
+    
+    // The cache after a successful build of plan; sources the build didn't touch keep their records
+    public BuildCache update(Plan plan, InProcessCompiler.Units units) {
+        java.util.Set<Path> compiled = new java.util.HashSet<>(plan.compile);
+        java.util.Map<String, SourceRecord> updated = new java.util.HashMap<>();
+        for (java.util.Map.Entry<Path, long[]> entry : plan.stats.entrySet()) {
+            Path file = entry.getKey();
+            long[] stat = entry.getValue();
+            SourceRecord old = sources.get(file.toString());
+            if (compiled.contains(file) || units.classes.containsKey(file)) {
+                updated.put(file.toString(), new SourceRecord(stat[0], stat[1], stat[2],
+                    units.classes.getOrDefault(file, List.of()),
+                    new ArrayList<>(units.declared.getOrDefault(file, java.util.Set.of())),
+                    new ArrayList<>(units.referenced.getOrDefault(file, java.util.Set.of()))));
+            } else if (old != null) {
+                updated.put(file.toString(), new SourceRecord(stat[0], stat[1], stat[2],
+                    old.classes, old.declared, old.referenced));
+            }
+        }
+        return new BuildCache(configuration, updated);
+    }
+    
+    private static boolean outputsExist(SourceRecord record, Path outputDir) {
+        List<Path> classFiles = new ArrayList<>();
+        addClassFiles(record, outputDir, classFiles);
+        for (Path classFile : classFiles) {
+            if (!Files.exists(classFile)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static void addClassFiles(SourceRecord record, Path outputDir, List<Path> classFiles) {
+        for (String className : record.classes) {
+            classFiles.add(outputDir.resolve(className.replace('.', '/') + ".class"));
+        }
+    }
+    
+    private static long hash(Path file) throws IOException {
+        try {
+            byte[] digest = java.security.MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file));
+            return java.nio.ByteBuffer.wrap(digest).getLong();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+    
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (java.io.DataOutputStream out = new java.io.DataOutputStream(
+                new java.io.BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(configuration);
+            out.writeInt(sources.size());
+            for (java.util.Map.Entry<String, SourceRecord> entry : sources.entrySet()) {
+                SourceRecord record = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(record.size);
+                out.writeLong(record.modified);
+                out.writeLong(record.hash);
+                writeStrings(out, record.classes);
+                writeStrings(out, record.declared);
+                writeStrings(out, record.referenced);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    public static BuildCache load(Path file) throws IOException {
+        try (java.io.DataInputStream in = new java.io.DataInputStream(
+                new java.io.BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported build cache format: " + file);
+            }
+            String configuration = in.readUTF();
+            int count = in.readInt();
+            java.util.Map<String, SourceRecord> sources = new java.util.HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                sources.put(path, new SourceRecord(in.readLong(), in.readLong(), in.readLong(),
+                    readStrings(in), readStrings(in), readStrings(in)));
+            }
+            return new BuildCache(configuration, sources);
+        }
+    }
+    
+    private static void writeStrings(java.io.DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+    
+    private static List<String> readStrings(java.io.DataInputStream in) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readUTF();
+        }
+        return List.of(values);
+    }
+}
+
+// Finds the classes with a "public static void main(String[])" in sources or in class
+// files. Files are scanned in parallel and the results are kept until a file's mtime or
+// size changes.
+class MainClassIndex {
+    private static final String MAIN_DESCRIPTOR = "([Ljava/lang/String;)V";
+    private static final int ACC_PUBLIC_STATIC = 0x0009;
+    private static MainClassIndex shared;
+    
+    private interface Scanner {
+        List<String> scan(Path file) throws IOException;
+    }
+    
+    private static class Entry {
+        final long modified;
+        final long size;
+        final List<String> mainClasses;
+        
+        Entry(long modified, long size, List<String> mainClasses) {
+            this.modified = modified;
+            this.size = size;
+            this.mainClasses = mainClasses;
+        }
+    }
+    
+    private final java.util.Map<Path, Entry> sources = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.Map<Path, Entry> classes = new java.util.concurrent.ConcurrentHashMap<>();
+    
+    public static synchronized MainClassIndex shared() {
+        if (shared == null) {
+            shared = new MainClassIndex();
+        }
+        return shared;
+    }
+    
+    public List<String> fromSources(List<Path> files) {
+        return collect(files, sources, MainClassIndex::scanSource);
+    }
+    
+    public List<String> fromClasses(Path classDirectory) throws IOException {
+        return collect(TrashReaper.findFiles(classDirectory, Integer.MAX_VALUE, ".class"), classes, MainClassIndex::scanClass);
+    }
+    
+    private static List<String> collect(List<Path> files, java.util.Map<Path, Entry> cache, Scanner scanner) {
+        java.util.Set<Path> unique = new java.util.LinkedHashSet<>();
+        for (Path file : files) {
+            unique.add(file.toAbsolutePath().normalize());
+        }
+        
+        // Sorted, so the order doesn't depend on the walk or on which thread finished first
+        java.util.Set<String> found = new java.util.concurrent.ConcurrentSkipListSet<>();
+        unique.parallelStream().forEach(file -> {
+            try {
+                java.nio.file.attribute.BasicFileAttributes attrs =
+                    Files.readAttributes(file, java.nio.file.attribute.BasicFileAttributes.class);
+                long modified = attrs.lastModifiedTime().toMillis();
+                Entry entry = cache.get(file);
+                if (entry == null || entry.modified != modified || entry.size != attrs.size()) {
+                    entry = new Entry(modified, attrs.size(), scanner.scan(file));
+                    cache.put(file, entry);
+                }
+                found.addAll(entry.mainClasses);
+            } catch (IOException e) {
+                // Unreadable files have no entry points
+            }
+        });
+        return new ArrayList<>(found);
+    }
+    
+    // Tokenizes only the declarations: method bodies and initializers are skipped by
+    // matching braces, and comments and literals never become tokens
+    static List<String> scanSource(Path file) throws IOException {
+        List<String> mainClasses = new ArrayList<>();
+        try (java.io.Reader reader = new java.io.InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            Tokenizer tokens = new Tokenizer(reader);
+            String packageName = "";
+            // Types whose body the scanner is in, innermost first, and which of them are
+            // interfaces, whose methods are implicitly public
+            java.util.ArrayDeque<String> types = new java.util.ArrayDeque<>();
+            java.util.ArrayDeque<Boolean> interfaces = new java.util.ArrayDeque<>();
+            String pendingType = null;
+            boolean pendingInterface = false;
+            boolean isPublic = false;
+            boolean isStatic = false;
+            String previous = null;
+            String beforePrevious = null;
+            String token;
+            while ((token = tokens.next()) != null) {
+                switch (token) {
+                    case "{":
+                        if (pendingType != null) {
+                            types.push(pendingType);
+                            interfaces.push(pendingInterface);
+                            pendingType = null;
+                        } else {
+                            tokens.skipBlock();
+                        }
+                        isPublic = false;
+                        isStatic = false;
+                        break;
+                    case "}":
+                        types.poll();
+                        interfaces.poll();
+                        isPublic = false;
+                        isStatic = false;
+                        break;
+                    case ";":
+                        isPublic = false;
+                        isStatic = false;
+                        break;
+                    case "(":
+                        if ("main".equals(previous) && "void".equals(beforePrevious) && isStatic && !types.isEmpty()
+                                && (isPublic || interfaces.peek())) {
+                            StringBuilder name = new StringBuilder(packageName);
+                            java.util.Iterator<String> outermostFirst = types.descendingIterator();
+                            while (outermostFirst.hasNext()) {
+                                name.append(name.length() == packageName.length() ? "" : "$").append(outermostFirst.next());
+                            }
+                            mainClasses.add(name.toString());
+                        }
+                        break;
+                    case "public":
+                        isPublic = true;
+                        break;
+                    case "static":
+                        isStatic = true;
+                        break;
+                    case "package":
+                        if (types.isEmpty() && packageName.isEmpty()) {
+                            StringBuilder name = new StringBuilder();
+                            while ((token = tokens.next()) != null && !token.equals(";")) {
+                                name.append(token);
+                            }
+                            packageName = name + ".";
+                        }
+                        break;
+                    default:
+                        // "class" after a dot is a class literal, not a declaration
+                        if (("class".equals(previous) || "interface".equals(previous) || "enum".equals(previous)
+                                || "record".equals(previous)) && !".".equals(beforePrevious)
+                                && Character.isJavaIdentifierStart(token.charAt(0))) {
+                            pendingType = token;
+                            pendingInterface = "interface".equals(previous);
+                        }
+                        break;
+                }
+                beforePrevious = previous;
+                previous = token;
+            }
+        }
+        return mainClasses;
+    }
+    
+    // Reads just the constant pool and the method table of a class file
+    static List<String> scanClass(Path file) throws IOException {
+        try (java.io.DataInputStream in = new java.io.DataInputStream(
+                new java.io.BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != 0xCAFEBABE) {
+                return List.of();
+            }
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+            
+            int count = in.readUnsignedShort();
+            String[] utf8 = new String[count];
+            int[] classNames = new int[count];
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1:
+                        utf8[i] = in.readUTF();
+                        break;
+                    case 7:
+                        classNames[i] = in.readUnsignedShort();
+                        break;
+                    case 8: case 16: case 19: case 20:
+                        in.skipBytes(2);
+                        break;
+                    case 15:
+                        in.skipBytes(3);
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                        in.skipBytes(4);
+                        break;
+                    case 5: case 6:
+                        // Longs and doubles take two slots
+                        in.skipBytes(8);
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Bad constant pool tag " + tag + " in " + file);
+                }
+            }
+            
+            in.readUnsignedShort();
+            String className = utf8[classNames[in.readUnsignedShort()]];
+            in.readUnsignedShort();
+            in.skipBytes(2 * in.readUnsignedShort());
+            skipMembers(in);
+            
+            int methods = in.readUnsignedShort();
+            for (int i = 0; i < methods; i++) {
+                int flags = in.readUnsignedShort();
+                String name = utf8[in.readUnsignedShort()];
+                String descriptor = utf8[in.readUnsignedShort()];
+                if ((flags & ACC_PUBLIC_STATIC) == ACC_PUBLIC_STATIC && "main".equals(name) && MAIN_DESCRIPTOR.equals(descriptor)) {
+                    return List.of(className.replace('/', '.'));
+                }
+                skipAttributes(in);
+            }
+            return List.of();
+        }
+    }
+    
+    private static void skipMembers(java.io.DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.skipBytes(6);
+            skipAttributes(in);
+        }
+    }
+    
+    private static void skipAttributes(java.io.DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.skipBytes(2);
+            in.skipNBytes(in.readInt() & 0xFFFFFFFFL);
+        }
+    }
+    
+    // Splits Java source into identifiers and single punctuation characters, reading
+    // through a small buffer. Every literal comes back as a lone quote character.
+    private static class Tokenizer {
+        private final java.io.Reader reader;
+        private final char[] buffer = new char[4096];
+        private int position;
+        private int limit;
+        
+        Tokenizer(java.io.Reader reader) {
+            this.reader = reader;
+        }
+        
+        String next() throws IOException {
+            int c;
+            while ((c = read()) >= 0) {
+                if (Character.isWhitespace(c) || (c == '/' && skipComment())) {
+                    continue;
+                }
+                if (c == '"' || c == '\'') {
+                    skipLiteral(c);
+                    return "\"";
+                }
+                if (Character.isJavaIdentifierPart(c)) {
+                    StringBuilder word = new StringBuilder().append((char) c);
+                    while (peek() >= 0 && Character.isJavaIdentifierPart(peek())) {
+                        word.append((char) read());
+                    }
+                    return word.toString();
+                }
+                return String.valueOf((char) c);
+            }
+            return null;
+        }
+        
+        // Consumes everything up to and including the brace closing the one just read
+        void skipBlock() throws IOException {
+            int depth = 1;
+            int c;
+            while ((c = read()) >= 0) {
+                if (c == '/') {
+                    skipComment();
+                } else if (c == '"' || c == '\'') {
+                    skipLiteral(c);
+                } else if (c == '{') {
+                    depth++;
+                } else if (c == '}' && --depth == 0) {
+                    return;
+                }
+            }
+        }
+        
+        // Called after a slash; true if it started a comment, which is then consumed
+        private boolean skipComment() throws IOException {
+            if (peek() == '/') {
+                int c;
+                while ((c = read()) >= 0 && c != '\n') {
+                }
+                return true;
+            }
+            if (peek() == '*') {
+                read();
+                int c;
+                int last = 0;
+                while ((c = read()) >= 0 && !(last == '*' && c == '/')) {
+                    last = c;
+                }
+                return true;
+            }
+            return false;
+        }
+        
+        // Called after the opening quote of a string, text block or char literal
+        private void skipLiteral(int quote) throws IOException {
+            if (quote == '"' && peek() == '"') {
+                read();
+                if (peek() != '"') {
+                    return; // Empty string
+                }
+                read();
+                int quotes = 0;
+                int c;
+                while ((c = read()) >= 0) {
+                    if (c == '\\') {
+                        read();
+                        quotes = 0;
+                    } else if (c == '"') {
+                        if (++quotes == 3) {
+                            return;
+                        }
+                    } else {
+                        quotes = 0;
+                    }
+                }
+                return;
+            }
+            int c;
+            while ((c = read()) >= 0 && c != quote && c != '\n') {
+                if (c == '\\') {
+                    read();
+                }
+            }
+        }
+        
+        private int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++];
+        }
+        
+        private int peek() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position];
+        }
+        
+        private boolean fill() throws IOException {
+            int read = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            limit = Math.max(read, 0);
+            return read > 0;
+        }
+    }
+}
+
+class FileEntry {
+    private final String name;
+    private final boolean folder;
+    private final long size;
+    private final long lastModified;
+    private final byte status;
+    
+    public FileEntry(String name, boolean folder, long size, long lastModified, byte status) {
+        this.name = name;
+        this.folder = folder;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.status = status;
+    }
+    
+    public String getName() { return name; }
+    public boolean isFolder() { return folder; }
+    public long getSize() { return size; }
+    public long getLastModified() { return lastModified; }
+    public byte getStatus() { return status; }
+}
+
+@SuppressWarnings("serial") // Lives only as long as the window; never serialized
+class FileTableModel extends AbstractTableModel {
+    public static final byte STATUS_PENDING = 0;
+    public static final byte STATUS_UNKNOWN = 1;
+    public static final byte STATUS_READ = 2;
+    public static final byte STATUS_READ_WRITE = 3;
+    public static final byte STATUS_MODIFIED = 4;
+    
+    private static final String[] COLUMN_NAMES = {"Name", "Type", "Size", "Last Modified", "Status"};
+    private static final String[] STATUS_LABELS = {"", "?", "R", "RW", "Modified"};
+    private static final short FOLDER_TYPE = 0;
+    private static final short PLAIN_FILE_TYPE = 1;
+    private static final int MAX_TYPE_LABELS = Short.MAX_VALUE + 1;
+    // Beyond this many separate runs of removed rows, one data-changed event is cheaper
+    private static final int MAX_DELETED_RUNS = 32;
+    
+    private final LongFunction<String> sizeFormatter;
+    // Cells are only rendered on the EDT, so one formatter is enough
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private final Date renderDate = new Date();
+    // Each distinct type label is stored once, in typeLabels, and rows keep only its
+    // index; past MAX_TYPE_LABELS further extensions are shown as plain files
+    private final List<String> typeLabels = new ArrayList<>(List.of("Folder", "File"));
+    private final java.util.Map<String, Short> typeCodes = new java.util.HashMap<>();
+    
+    private Path root;
+    private int count;
+    private String[] names = new String[0];
+    private long[] sizes = new long[0];
+    private long[] modifiedTimes = new long[0];
+    private short[] types = new short[0];
+    private byte[] statuses = new byte[0];
+    // Visible rows as entry ids, in display order
+    private int[] view = new int[0];
+    private int viewSize;
+    // Inverse of the view: display row per entry id, -1 while hidden
+    private int[] rowOf = new int[0];
+    // Per-row text shown instead of the status, e.g. matching lines; dropped with the view
+    private final java.util.Map<Integer, String> notes = new java.util.HashMap<>();
+    // Bumped whenever existing ids change meaning (clear, removal, sort)
+    private int structureVersion;
+    // Name to id, kept across watcher batches; null until first needed after a clear or sort
+    private java.util.Map<String, Integer> idsByName;
+    
+    public FileTableModel(LongFunction<String> sizeFormatter) {
+        this.sizeFormatter = sizeFormatter;
+    }
+    
+    @Override
+    public int getRowCount() {
+        return viewSize;
+    }
+    
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+    
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+    
+    @Override
+    public Object getValueAt(int row, int column) {
+        int id = view[row];
+        switch (column) {
+            case 0:
+                return names[id];
+            case 1:
+                return typeLabels.get(types[id]);
+            case 2:
+                // Formatted on demand, only for cells that are actually painted
+                return types[id] == FOLDER_TYPE ? "" : sizeFormatter.apply(sizes[id]);
+            case 3:
+                renderDate.setTime(modifiedTimes[id]);
+                return dateFormat.format(renderDate);
+            default:
+                String note = notes.isEmpty() ? null : notes.get(id);
+                if (note != null) {
+                    return note;
+                }
+                if (statuses[id] == STATUS_PENDING) {
+                    // Access checks are only made for rows that are actually shown
+                    statuses[id] = probeStatus(getEntryPath(id));
+                }
+                return STATUS_LABELS[statuses[id]];
+        }
+    }
+    
+    public void clear(Path root) {
+        this.root = root;
+        hideAll();
+        count = 0;
+        structureVersion++;
+        idsByName = null;
+        java.util.Arrays.fill(names, null);
+        fireTableDataChanged();
+    }
+    
+    public Path getRoot() {
+        return root;
+    }
+    
+    public int getEntryCount() {
+        return count;
+    }
+    
+    public int getStructureVersion() {
+        return structureVersion;
+    }
+    
+    // Safe to read from other threads for ids below the current count, as long as
+    // the structure version is checked before the results are used
+    public String[] getNameColumn() {
+        return names;
+    }
+    
+    public int add(FileEntry entry) {
+        ensureCapacity(count + 1);
+        int id = count++;
+        rowOf[id] = -1;
+        update(id, entry);
+        if (idsByName != null) {
+            idsByName.put(names[id], id);
+        }
+        return id;
+    }
+    
+    public void update(int id, FileEntry entry) {
+        names[id] = entry.getName();
+        sizes[id] = entry.getSize();
+        modifiedTimes[id] = entry.getLastModified();
+        types[id] = entry.isFolder() ? FOLDER_TYPE : typeCodeFor(entry.getName());
+        statuses[id] = entry.getStatus();
+        fireEntryUpdated(id);
+    }
+    
+    // Adds a batch of entries and shows the ones the current search accepts
+    public void append(List<FileEntry> entries, Predicate<String> visible) {
+        ensureCapacity(count + entries.size());
+        int firstRow = viewSize;
+        for (FileEntry entry : entries) {
+            int id = count++;
+            names[id] = entry.getName();
+            sizes[id] = entry.getSize();
+            modifiedTimes[id] = entry.getLastModified();
+            types[id] = entry.isFolder() ? FOLDER_TYPE : typeCodeFor(entry.getName());
+            statuses[id] = entry.getStatus();
+            if (idsByName != null) {
+                idsByName.put(names[id], id);
+            }
+            if (visible.test(names[id])) {
+                rowOf[id] = viewSize;
+                view[viewSize++] = id;
+            } else {
+                rowOf[id] = -1;
+            }
+        }
+        if (viewSize > firstRow) {
+            fireTableRowsInserted(firstRow, viewSize - 1);
+        }
+    }
+    
+    // Compacts the columns and drops the removed rows from the view; ids above a
+    // removed entry shift down, so the structure version changes
+    public void removeEntries(IntPredicate removed) {
+        int[] newIds = new int[count];
+        int kept = 0;
+        for (int id = 0; id < count; id++) {
+            if (removed.test(id)) {
+                if (idsByName != null) {
+                    idsByName.remove(names[id]);
+                }
+                newIds[id] = -1;
+                continue;
+            }
+            newIds[id] = kept;
+            names[kept] = names[id];
+            sizes[kept] = sizes[id];
+            modifiedTimes[kept] = modifiedTimes[id];
+            types[kept] = types[id];
+            statuses[kept] = statuses[id];
+            if (idsByName != null && kept != id) {
+                idsByName.put(names[kept], kept);
+            }
+            kept++;
+        }
+        if (kept == count) {
+            return;
+        }
+        java.util.Arrays.fill(names, kept, count, null);
+        count = kept;
+        structureVersion++;
+        
+        if (!notes.isEmpty()) {
+            java.util.Map<Integer, String> moved = new java.util.HashMap<>();
+            notes.forEach((id, note) -> {
+                if (newIds[id] != -1) {
+                    moved.put(newIds[id], note);
+                }
+            });
+            notes.clear();
+            notes.putAll(moved);
+        }
+        
+        // Renumber the view, counting the runs of rows that have to go
+        int runs = 0;
+        for (int row = 0; row < viewSize; row++) {
+            view[row] = newIds[view[row]];
+            if (view[row] == -1 && (row == 0 || view[row - 1] != -1)) {
+                runs++;
+            }
+        }
+        if (runs > MAX_DELETED_RUNS) {
+            // Scattered removals: one compaction beats shifting the tail once per run
+            int shown = 0;
+            for (int row = 0; row < viewSize; row++) {
+                if (view[row] != -1) {
+                    view[shown++] = view[row];
+                }
+            }
+            viewSize = shown;
+            rebuildRowOf();
+            fireTableDataChanged();
+            return;
+        }
+        // Bottom-up, so the rows of runs not yet removed keep their positions
+        int row = viewSize - 1;
+        while (row >= 0) {
+            if (view[row] != -1) {
+                row--;
+                continue;
+            }
+            int last = row;
+            while (row > 0 && view[row - 1] == -1) {
+                row--;
+            }
+            System.arraycopy(view, last + 1, view, row, viewSize - last - 1);
+            viewSize -= last - row + 1;
+            fireTableRowsDeleted(row, last);
+            row--;
+        }
+        rebuildRowOf();
+    }
+    
+    public void sortByName() {
+        applyOrder(sortedOrder(names, count));
+    }
+    
+    // Ids ordered by name. A merge sort over primitive ids, so no boxed object is
+    // made per entry; safe to call off the EDT on a snapshot of the names.
+    public static int[] sortedOrder(String[] names, int count) {
+        int[] order = new int[count];
+        for (int id = 0; id < count; id++) {
+            order[id] = id;
+        }
+        int[] scratch = new int[count];
+        for (int width = 1; width < count; width *= 2) {
+            for (int from = 0; from < count - width; from += 2 * width) {
+                int middle = from + width;
+                int to = Math.min(from + 2 * width, count);
+                if (names[order[middle - 1]].compareTo(names[order[middle]]) <= 0) {
+                    continue; // Already in order
+                }
+                int left = from;
+                int right = middle;
+                for (int i = from; i < to; i++) {
+                    if (right >= to || (left < middle && names[order[left]].compareTo(names[order[right]]) <= 0)) {
+                        scratch[i] = order[left++];
+                    } else {
+                        scratch[i] = order[right++];
+                    }
+                }
+                System.arraycopy(scratch, from, order, from, to - from);
+            }
+        }
+        return order;
+    }
+    
+    // Rearranges the entries so the one at order[i] gets id i
+    public void applyOrder(int[] order) {
+        hideAll();
+        String[] sortedNames = new String[names.length];
+        long[] sortedSizes = new long[names.length];
+        long[] sortedTimes = new long[names.length];
+        short[] sortedTypes = new short[names.length];
+        byte[] sortedStatuses = new byte[names.length];
+        for (int i = 0; i < count; i++) {
+            int id = order[i];
+            sortedNames[i] = names[id];
+            sortedSizes[i] = sizes[id];
+            sortedTimes[i] = modifiedTimes[id];
+            sortedTypes[i] = types[id];
+            sortedStatuses[i] = statuses[id];
+        }
+        names = sortedNames;
+        sizes = sortedSizes;
+        modifiedTimes = sortedTimes;
+        types = sortedTypes;
+        statuses = sortedStatuses;
+        structureVersion++;
+        idsByName = null;
+        fireTableDataChanged();
+    }
+    
+    // Replaces the row view in place; no per-row objects are created
+    public void showEntries(int[] ids, int length) {
+        hideAll();
+        System.arraycopy(ids, 0, view, 0, length);
+        for (int row = 0; row < length; row++) {
+            rowOf[ids[row]] = row;
+        }
+        viewSize = length;
+        fireTableDataChanged();
+    }
+    
+    // Adds one more row to the current view, for results that arrive incrementally
+    public void appendToView(int id, String note) {
+        if (rowOf[id] != -1) {
+            return;
+        }
+        if (note != null) {
+            notes.put(id, note);
+        }
+        rowOf[id] = viewSize;
+        view[viewSize++] = id;
+        fireTableRowsInserted(viewSize - 1, viewSize - 1);
+    }
+    
+    public int getEntryId(int row) {
+        return view[row];
+    }
+    
+    // Display row of an entry, or -1 if the current view hides it
+    public int getRowForEntry(int id) {
+        return id >= 0 && id < count ? rowOf[id] : -1;
+    }
+    
+    public int findEntry(String name) {
+        if (idsByName == null) {
+            idsByName = new java.util.HashMap<>(Math.max(16, count * 2));
+            for (int id = 0; id < count; id++) {
+                idsByName.put(names[id], id);
+            }
+        }
+        Integer id = idsByName.get(name);
+        return id != null ? id : -1;
+    }
+    
+    public String getEntryName(int id) {
+        return names[id];
+    }
+    
+    public Path getEntryPath(int id) {
+        return root.resolve(names[id]);
+    }
+    
+    public long getEntrySize(int id) {
+        return sizes[id];
+    }
+    
+    public boolean isEntryFolder(int id) {
+        return types[id] == FOLDER_TYPE;
+    }
+    
+    public long getEntryModified(int id) {
+        return modifiedTimes[id];
+    }
+    
+    public void setEntryModified(int id, long lastModified) {
+        modifiedTimes[id] = lastModified;
+        fireEntryUpdated(id);
+    }
+    
+    public byte getEntryStatus(int id) {
+        return statuses[id];
+    }
+    
+    public void setEntryStatus(int id, byte status) {
+        statuses[id] = status;
+        fireEntryUpdated(id);
+    }
+    
+    private static byte probeStatus(Path path) {
+        if (!Files.isReadable(path)) {
+            return STATUS_UNKNOWN;
+        }
+        return Files.isWritable(path) ? STATUS_READ_WRITE : STATUS_READ;
+    }
+    
+    private void fireEntryUpdated(int id) {
+        int row = rowOf[id];
+        if (row != -1) {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+    
+    private void rebuildRowOf() {
+        java.util.Arrays.fill(rowOf, 0, count, -1);
+        for (int row = 0; row < viewSize; row++) {
+            rowOf[view[row]] = row;
+        }
+    }
+    
+    // Empties the view; only the rows that were shown need resetting
+    private void hideAll() {
+        for (int row = 0; row < viewSize; row++) {
+            rowOf[view[row]] = -1;
+        }
+        viewSize = 0;
+        notes.clear();
+    }
+    
+    private void ensureCapacity(int required) {
+        if (required <= names.length) {
+            return;
+        }
+        int capacity = Math.max(required, Math.max(1024, names.length + (names.length >> 1)));
+        names = java.util.Arrays.copyOf(names, capacity);
+        sizes = java.util.Arrays.copyOf(sizes, capacity);
+        modifiedTimes = java.util.Arrays.copyOf(modifiedTimes, capacity);
+        types = java.util.Arrays.copyOf(types, capacity);
+        statuses = java.util.Arrays.copyOf(statuses, capacity);
+        view = java.util.Arrays.copyOf(view, capacity);
+        rowOf = java.util.Arrays.copyOf(rowOf, capacity);
+    }
+    
+    private short typeCodeFor(String name) {
+        // Same rule as Main.getFileExtension, applied to the last path segment
+        int slash = Math.max(name.lastIndexOf('/'), name.lastIndexOf(File.separatorChar));
+        int lastDot = name.lastIndexOf('.');
+        if (lastDot <= slash + 1) {
+            return PLAIN_FILE_TYPE;
+        }
+        String label = name.substring(lastDot + 1).toUpperCase();
+        Short code = typeCodes.get(label);
+        if (code == null) {
+            if (typeLabels.size() == MAX_TYPE_LABELS) {
+                return PLAIN_FILE_TYPE;
+            }
+            code = (short) typeLabels.size();
+            typeLabels.add(label);
+            typeCodes.put(label, code);
+        }
+        return code;
+    }
+    
+    static boolean containsIgnoreCase(String text, String query) {
+        int last = text.length() - query.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+class FileNameIndex {
+    private static final int MAGIC = 0x44464958; // "DFIX"
+    private static final int VERSION = 2;
+    
+    // What a directory looked like when it was indexed: its mtime, and the sum of
+    // its children's name hashes (order-independent, so parallel walks agree)
+    static final class Stamp {
+        final long modified;
+        final long fingerprint;
+        
+        Stamp(long modified, long fingerprint) {
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Stamp && ((Stamp) other).modified == modified
+                && ((Stamp) other).fingerprint == fingerprint;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Long.hashCode(modified * 31 + fingerprint);
+        }
+    }
+    
+    private final String root;
+    // Directory stamps keyed by path relative to the root ("" for the root itself)
+    private final java.util.Map<String, Stamp> directories;
+    // Names as listed; trigram keys and matching ignore case
+    private final String[] names;
+    // Sorted trigram keys; postings for keys[i] are varint id deltas in
+    // postings[offsets[i]..offsets[i + 1]), holding counts[i] ids
+    private final int[] keys;
+    private final int[] offsets;
+    private final int[] counts;
+    private final byte[] postings;
+    
+    private FileNameIndex(String root, java.util.Map<String, Stamp> directories, String[] names,
+            int[] keys, int[] offsets, int[] counts, byte[] postings) {
+        this.root = root;
+        this.directories = directories;
+        this.names = names;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.counts = counts;
+        this.postings = postings;
+    }
+    
+    public static FileNameIndex build(String root, List<String> nameList, java.util.Map<String, Stamp> directories) {
+        String[] names = nameList.toArray(new String[0]);
+        int[] trigrams = new int[16];
+        
+        // Counting pass: distinct keys, and the exact encoded size of each posting list
+        java.util.Map<Integer, Integer> slotOf = new java.util.HashMap<>();
+        int[] slotCounts = new int[256];
+        int[] slotBytes = new int[256];
+        int[] slotLast = new int[256];
+        for (int id = 0; id < names.length; id++) {
+            int distinct = distinctTrigrams(names[id], trigrams = ensureLength(trigrams, names[id].length()));
+            for (int t = 0; t < distinct; t++) {
+                Integer slot = slotOf.get(trigrams[t]);
+                if (slot == null) {
+                    slot = slotOf.size();
+                    slotOf.put(trigrams[t], slot);
+                    if (slot == slotCounts.length) {
+                        slotCounts = java.util.Arrays.copyOf(slotCounts, slot * 2);
+                        slotBytes = java.util.Arrays.copyOf(slotBytes, slot * 2);
+                        slotLast = java.util.Arrays.copyOf(slotLast, slot * 2);
+                    }
+                }
+                slotCounts[slot]++;
+                slotBytes[slot] += varintSize(id - slotLast[slot]);
+                slotLast[slot] = id;
+            }
+        }
+        
+        int keyCount = slotOf.size();
+        int[] keys = new int[keyCount];
+        int k = 0;
+        for (int key : slotOf.keySet()) {
+            keys[k++] = key;
+        }
+        java.util.Arrays.sort(keys);
+        int[] offsets = new int[keyCount + 1];
+        int[] counts = new int[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            int slot = slotOf.get(keys[i]);
+            counts[i] = slotCounts[slot];
+            offsets[i + 1] = offsets[i] + slotBytes[slot];
+        }
+        
+        // Writing pass: same trigrams again, now straight into their final place
+        byte[] postings = new byte[offsets[keyCount]];
+        int[] cursor = java.util.Arrays.copyOf(offsets, keyCount);
+        int[] last = new int[keyCount];
+        for (int id = 0; id < names.length; id++) {
+            int distinct = distinctTrigrams(names[id], trigrams);
+            for (int t = 0; t < distinct; t++) {
+                int i = java.util.Arrays.binarySearch(keys, trigrams[t]);
+                cursor[i] = writeVarint(postings, cursor[i], id - last[i]);
+                last[i] = id;
+            }
+        }
+        return new FileNameIndex(root, new java.util.HashMap<>(directories), names, keys, offsets, counts, postings);
+    }
+    
+    public int size() {
+        return names.length;
+    }
+    
+    public String getName(int id) {
+        return names[id];
+    }
+    
+    public String getRoot() {
+        return root;
+    }
+    
+    public Stamp stampOf(String directory) {
+        return directories.get(directory);
+    }
+    
+    // True when exactly these directories were indexed, each with the same stamp
+    public boolean hasDirectories(java.util.Map<String, Stamp> walked) {
+        return directories.equals(walked);
+    }
+    
+    // Returns the ids of names containing the query in ascending order,
+    // or null when the query is too short to be answered from trigrams
+    public int[] query(String query) {
+        if (query.length() < 3) {
+            return null;
+        }
+        
+        int trigramCount = query.length() - 2;
+        int[] slots = new int[trigramCount];
+        for (int i = 0; i < trigramCount; i++) {
+            int slot = java.util.Arrays.binarySearch(keys, trigramKey(query, i));
+            if (slot < 0) {
+                return new int[0];
+            }
+            slots[i] = slot;
+        }
+        
+        // Start from the rarest trigram so the candidate set is as small as possible
+        int rarest = 0;
+        for (int i = 1; i < trigramCount; i++) {
+            if (counts[slots[i]] < counts[slots[rarest]]) {
+                rarest = i;
+            }
+        }
+        int[] result = new int[counts[slots[rarest]]];
+        int found = 0;
+        int p = offsets[slots[rarest]];
+        int id = 0;
+        while (found < result.length) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = postings[p++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            id += value;
+            result[found++] = id;
+        }
+        
+        // Intersect with the remaining postings, decoding them as we go; both sides are sorted by id
+        for (int i = 0; i < trigramCount && found > 0; i++) {
+            if (i == rarest) {
+                continue;
+            }
+            p = offsets[slots[i]];
+            int end = offsets[slots[i] + 1];
+            int current = -1;
+            int decoded = 0;
+            int kept = 0;
+            for (int c = 0; c < found; c++) {
+                int wanted = result[c];
+                while (current < wanted && p < end) {
+                    int value = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = postings[p++];
+                        value |= (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    decoded += value;
+                    current = decoded;
+                }
+                if (current == wanted) {
+                    result[kept++] = wanted;
+                } else if (current < wanted) {
+                    break; // This posting list is exhausted
+                }
+            }
+            found = kept;
+        }
+        
+        // Trigram hits are only candidates; confirm the full substring
+        int confirmed = 0;
+        for (int c = 0; c < found; c++) {
+            if (FileTableModel.containsIgnoreCase(names[result[c]], query)) {
+                result[confirmed++] = result[c];
+            }
+        }
+        return java.util.Arrays.copyOf(result, confirmed);
+    }
+    
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (java.io.DataOutputStream out = new java.io.DataOutputStream(
+                new java.io.BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root);
+            out.writeInt(directories.size());
+            for (java.util.Map.Entry<String, Stamp> entry : directories.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().modified);
+                out.writeLong(entry.getValue().fingerprint);
+            }
+            out.writeInt(names.length);
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            writeInts(out, keys);
+            writeInts(out, offsets);
+            writeInts(out, counts);
+            out.writeInt(postings.length);
+            out.write(postings);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    public static FileNameIndex load(Path file) throws IOException {
+        try (java.io.DataInputStream in = new java.io.DataInputStream(
+                new java.io.BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported index format: " + file);
+            }
+            String root = in.readUTF();
+            int directoryCount = in.readInt();
+            java.util.Map<String, Stamp> directories = new java.util.HashMap<>(Math.max(16, directoryCount * 2));
+            for (int i = 0; i < directoryCount; i++) {
+                directories.put(in.readUTF(), new Stamp(in.readLong(), in.readLong()));
+            }
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            int[] keys = readInts(in);
+            int[] offsets = readInts(in);
+            int[] counts = readInts(in);
+            byte[] postings = new byte[in.readInt()];
+            in.readFully(postings);
+            if (offsets.length != keys.length + 1 || counts.length != keys.length
+                    || offsets[keys.length] != postings.length) {
+                throw new IOException("Corrupt index: " + file);
+            }
+            return new FileNameIndex(root, directories, names, keys, offsets, counts, postings);
+        }
+    }
+    
+    public static String fileNameFor(Path root, boolean recursive) {
+        String key = root.toAbsolutePath().normalize() + (recursive ? "|recursive" : "|flat");
+        return Long.toHexString(nameHash(key)) + ".idx";
+    }
+    
+    // 64-bit FNV-1a; directory fingerprints add these up over the children
+    public static long nameHash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+    
+    // Directory key of a listed name: the relative path up to the last separator
+    public static String directoryOf(String name) {
+        int slash = name.lastIndexOf(File.separatorChar);
+        return slash < 0 ? "" : name.substring(0, slash);
+    }
+    
+    private static int trigramKey(String text, int start) {
+        // Non-ASCII characters may collide; query() verifies every candidate anyway
+        return (Character.toLowerCase(text.charAt(start)) & 0x3FF) << 20
+            | (Character.toLowerCase(text.charAt(start + 1)) & 0x3FF) << 10
+            | (Character.toLowerCase(text.charAt(start + 2)) & 0x3FF);
+    }
+    
+    // Sorted, deduplicated trigram keys of one name; returns how many there are
+    private static int distinctTrigrams(String name, int[] into) {
+        int n = name.length() - 2;
+        if (n <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < n; i++) {
+            into[i] = trigramKey(name, i);
+        }
+        java.util.Arrays.sort(into, 0, n);
+        int distinct = 1;
+        for (int i = 1; i < n; i++) {
+            if (into[i] != into[distinct - 1]) {
+                into[distinct++] = into[i];
+            }
+        }
+        return distinct;
+    }
+    
+    private static int[] ensureLength(int[] array, int length) {
+        return array.length >= length ? array : new int[Math.max(length, array.length * 2)];
+    }
+    
+    private static void writeInts(java.io.DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+    
+    private static int[] readInts(java.io.DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+    
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+    
+    private static int writeVarint(byte[] out, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+}
+
+// Output window contents for chatty processes. Lines live in a fixed-size ring, so old
+// output is dropped instead of growing the heap; appends from any thread only mark the
+// view dirty, and a timer repaints at most FRAMES_PER_SECOND times. Only the lines inside
+// the clip are drawn.
+@SuppressWarnings("serial") // Swing serialization isn't supported for this view
+class ConsoleView extends JComponent implements Scrollable {
+    private static final int MAX_LINES = Math.max(1, Integer.getInteger("docfinder.console.maxLines", 10_000));
+    // Longer lines are wrapped into several, so one huge line can't grow without bound
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int READ_BLOCK_SIZE = 64 * 1024;
+    private static final int FRAMES_PER_SECOND = 30;
+    
+    private final String[] lines = new String[MAX_LINES];
+    // Index of the oldest line in the ring, and how many lines it holds
+    private int start;
+    private int size;
+    private int longestLine;
+    private volatile boolean dirty;
+    private volatile boolean closed;
+    // Process whose output is shown; ended when the console is closed
+    private Process process;
+    private final javax.swing.Timer repaintTimer;
+    
+    public ConsoleView() {
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+        repaintTimer = new javax.swing.Timer(1000 / FRAMES_PER_SECOND, e -> refresh());
+        
+        JPopupMenu menu = new JPopupMenu();
+        JMenuItem copyAll = new JMenuItem("Copy All");
+        copyAll.addActionListener(e -> Toolkit.getDefaultToolkit().getSystemClipboard()
+            .setContents(new java.awt.datatransfer.StringSelection(getText()), null));
+        menu.add(copyAll);
+        setComponentPopupMenu(menu);
+    }
+    
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        repaintTimer.start();
+    }
+    
+    @Override
+    public void removeNotify() {
+        repaintTimer.stop();
+        super.removeNotify();
+    }
+    
+    // Ties a process to the console, so closing it also ends the process
+    public synchronized void attach(Process process) {
+        this.process = process;
+        if (closed) {
+            destroy(process);
+        }
+    }
+    
+    // Ends the attached process, stops any pump and drops the buffered lines;
+    // output arriving afterwards is ignored
+    public void close() {
+        Process attached;
+        synchronized (this) {
+            closed = true;
+            attached = process;
+            process = null;
+            java.util.Arrays.fill(lines, null);
+            start = 0;
+            size = 0;
+            longestLine = 0;
+        }
+        repaintTimer.stop();
+        if (attached != null) {
+            destroy(attached);
+        }
+    }
+    
+    private static void destroy(Process process) {
+        // A shell's children would otherwise keep running, and keep the pipe open
+        process.descendants().forEach(ProcessHandle::destroy);
+        process.destroy();
+    }
+    
+    // Safe to call from any thread
+    public void appendLine(String line) {
+        if (closed) {
+            return;
+        }
+        if (line.indexOf('\n') >= 0) {
+            for (String part : line.split("\r?\n", -1)) {
+                appendLine(part);
+            }
+            return;
+        }
+        if (line.length() > MAX_LINE_LENGTH) {
+            for (int i = 0; i < line.length(); i += MAX_LINE_LENGTH) {
+                appendLine(line.substring(i, Math.min(line.length(), i + MAX_LINE_LENGTH)));
+            }
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (size < lines.length) {
+                lines[(start + size++) % lines.length] = line;
+            } else {
+                lines[start] = line;
+                start = (start + 1) % lines.length;
+            }
+            longestLine = Math.max(longestLine, line.length());
+        }
+        dirty = true;
+    }
+    
+    // Copies a process's output into the console until it or the console closes. Bytes are
+    // decoded a block at a time instead of line by line; lines break at \n, \r\n or \r.
+    public void pump(java.io.InputStream in) throws IOException {
+        java.nio.charset.CharsetDecoder decoder = java.nio.charset.Charset.defaultCharset().newDecoder()
+            .onMalformedInput(java.nio.charset.CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(java.nio.charset.CodingErrorAction.REPLACE);
+        java.nio.ByteBuffer bytes = java.nio.ByteBuffer.allocate(READ_BLOCK_SIZE);
+        java.nio.CharBuffer chars = java.nio.CharBuffer.allocate(READ_BLOCK_SIZE);
+        StringBuilder line = new StringBuilder();
+        boolean afterCarriageReturn = false;
+        boolean eof = false;
+        while (!eof && !closed) {
+            int read = in.read(bytes.array(), bytes.position(), bytes.remaining());
+            if (read < 0) {
+                eof = true;
+            } else {
+                bytes.position(bytes.position() + read);
+            }
+            bytes.flip();
+            // At the end, a truncated multibyte sequence still comes out as a replacement
+            decoder.decode(bytes, chars, eof);
+            if (eof) {
+                decoder.flush(chars);
+            }
+            bytes.compact();
+            chars.flip();
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (c == '\n' && afterCarriageReturn) {
+                    afterCarriageReturn = false;
+                    continue;
+                }
+                afterCarriageReturn = c == '\r';
+                if (c == '\n' || c == '\r') {
+                    appendLine(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append(c);
+                    if (line.length() == MAX_LINE_LENGTH) {
+                        appendLine(line.toString());
+                        line.setLength(0);
+                    }
+                }
+            }
+            chars.clear();
+        }
+        if (line.length() > 0) {
+            appendLine(line.toString());
+        }
+    }
+    
+    public synchronized String getText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            text.append(lines[(start + i) % lines.length]).append('\n');
+        }
+        return text.toString();
+    }
+    
+    private void refresh() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        
+        // Follow the output only while the user hasn't scrolled away from the end
+        Rectangle visible = getVisibleRect();
+        boolean atEnd = visible.y + visible.height >= getHeight() - lineHeight();
+        revalidate();
+        repaint();
+        if (atEnd) {
+            SwingUtilities.invokeLater(() -> scrollRectToVisible(new Rectangle(0, getHeight() - 1, 1, 1)));
+        }
+    }
+    
+    private int lineHeight() {
+        return getFontMetrics(getFont()).getHeight();
+    }
+    
+    @Override
+    public Dimension getPreferredSize() {
+        FontMetrics metrics = getFontMetrics(getFont());
+        synchronized (this) {
+            return new Dimension(longestLine * metrics.charWidth('m') + 8, size * metrics.getHeight() + 4);
+        }
+    }
+    
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        g.setColor(getForeground());
+        g.setFont(getFont());
+        
+        FontMetrics metrics = g.getFontMetrics();
+        int height = metrics.getHeight();
+        int first = Math.max(0, (clip.y - 2) / height);
+        int last = (clip.y + clip.height - 2) / height;
+        synchronized (this) {
+            for (int i = first; i <= last && i < size; i++) {
+                g.drawString(lines[(start + i) % lines.length], 4, 2 + i * height + metrics.getAscent());
+            }
+        }
+    }
+    
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        FontMetrics metrics = getFontMetrics(getFont());
+        return new Dimension(80 * metrics.charWidth('m'), 20 * metrics.getHeight());
+    }
+    
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight() : getFontMetrics(getFont()).charWidth('m');
+    }
+    
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+    
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+    }
+    
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+}
+
 class NanoEditor extends JFrame {
     private JTextArea textArea;
     private Path filePath;
@@ -0,0 +1,72 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Run with: javac -d out src/Main.java test/*.java && java -cp out FileNameIndexTest
+public class FileNameIndexTest {
+    public static void main(String[] args) throws IOException {
+        List<String> names = randomNames(new Random(42), 5000);
+        Map<String, FileNameIndex.Stamp> stamps = Map.of("", new FileNameIndex.Stamp(1234L, 99L),
+            "src", new FileNameIndex.Stamp(5678L, -7L));
+        FileNameIndex index = FileNameIndex.build("/root", names, stamps);
+        queriesMatchScan(index, names);
+        
+        Path file = Files.createTempFile("file-name-index", ".idx");
+        try {
+            index.save(file);
+            FileNameIndex loaded = FileNameIndex.load(file);
+            check(loaded.getRoot().equals("/root"), "root survives a round trip");
+            check(loaded.hasDirectories(stamps), "directory stamps survive a round trip");
+            check(!loaded.hasDirectories(Map.of("", new FileNameIndex.Stamp(1234L, 99L))), "missing directory is noticed");
+            queriesMatchScan(loaded, names);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        
+        check(FileNameIndex.directoryOf("Main.java").isEmpty(), "top-level name has the root as directory");
+        check(FileNameIndex.directoryOf(Path.of("src", "app", "Main.java").toString()).equals(Path.of("src", "app").toString()),
+            "nested name has its parent as directory");
+        System.out.println("FileNameIndexTest passed");
+    }
+    
+    private static void queriesMatchScan(FileNameIndex index, List<String> names) {
+        for (String query : new String[] {"main", "MAIN", "abc", "a.j", "zzzz", "ava"}) {
+            List<Integer> expected = new ArrayList<>();
+            for (int id = 0; id < names.size(); id++) {
+                if (FileTableModel.containsIgnoreCase(names.get(id), query.toLowerCase())) {
+                    expected.add(id);
+                }
+            }
+            List<Integer> actual = new ArrayList<>();
+            for (int id : index.query(query.toLowerCase())) {
+                actual.add(id);
+            }
+            check(actual.equals(expected), "query '" + query + "' matches a scan");
+        }
+        check(index.query("ab") == null, "short queries are left to the caller");
+    }
+    
+    private static List<String> randomNames(Random random, int count) {
+        String[] parts = {"Main", "main", "ABC", "abc", "Test", "util", "a", "b", "c", "."};
+        String[] extensions = {".java", ".JAVA", ".txt", ""};
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int p = random.nextInt(4); p >= 0; p--) {
+                name.append(parts[random.nextInt(parts.length)]);
+            }
+            names.add(name.append(i).append(extensions[random.nextInt(extensions.length)]).toString());
+        }
+        return names;
+    }
+    
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.Arrays;
+
+// Run with: javac -d out src/Main.java test/*.java && java -cp out FuzzyMatcherTest
+public class FuzzyMatcherTest {
+    public static void main(String[] args) {
+        prefersAlignmentAtFileNameStart();
+        rejectsOutOfOrderCharacters();
+        rankPutsBestAlignmentFirst();
+        System.out.println("FuzzyMatcherTest passed");
+    }
+    
+    // "main" first occurs inside "domain"; the match worth ranking is Main.java
+    private static void prefersAlignmentAtFileNameStart() {
+        FuzzyMatcher matcher = new FuzzyMatcher("main");
+        int fileName = matcher.score("src/domain/Main.java");
+        int directory = matcher.score("lib/mainframe/util.txt");
+        check(fileName > directory, "src/domain/Main.java (" + fileName + ") should beat lib/mainframe/util.txt (" + directory + ")");
+    }
+    
+    private static void rejectsOutOfOrderCharacters() {
+        FuzzyMatcher matcher = new FuzzyMatcher("dmj");
+        check(matcher.score("src/domain/Main.java") != FuzzyMatcher.NO_MATCH, "d, m, j appear in order");
+        check(new FuzzyMatcher("jmd").score("src/domain/Main.java") == FuzzyMatcher.NO_MATCH, "nothing follows the j of java");
+    }
+    
+    private static void rankPutsBestAlignmentFirst() {
+        String[] names = {"lib/mainframe/util.txt", "docs/remaining.md", "src/domain/Main.java"};
+        int[] ranked = new FuzzyMatcher("main").rank(names, names.length, 2, () -> false);
+        check(Arrays.equals(ranked, new int[] {2, 0}), "expected [2, 0] but ranked " + Arrays.toString(ranked));
+    }
+    
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Run with: javac -d out src/Main.java test/*.java && java -cp out MainClassIndexTest
+public class MainClassIndexTest {
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("main-class-index");
+        try {
+            interfaceMainIsImplicitlyPublic(dir);
+            classMainMustBePublic(dir);
+            System.out.println("MainClassIndexTest passed");
+        } finally {
+            try (java.util.stream.Stream<Path> walk = Files.walk(dir)) {
+                walk.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+    
+    private static void interfaceMainIsImplicitlyPublic(Path dir) throws IOException {
+        Path source = dir.resolve("Launcher.java");
+        Files.writeString(source, "package app;\n"
+            + "interface Launcher {\n"
+            + "    static void main(String[] args) { }\n"
+            + "    interface Nested { static void main(String... args) { } }\n"
+            + "}\n");
+        check(MainClassIndex.scanSource(source), List.of("app.Launcher", "app.Launcher$Nested"));
+    }
+    
+    private static void classMainMustBePublic(Path dir) throws IOException {
+        Path source = dir.resolve("Tool.java");
+        Files.writeString(source, "class Tool {\n"
+            + "    static void main(String[] args) { }\n"
+            + "    interface Inner { }\n"
+            + "}\n");
+        check(MainClassIndex.scanSource(source), List.of());
+    }
+    
+    private static void check(List<String> actual, List<String> expected) {
+        if (!actual.equals(expected)) {
+            throw new AssertionError("expected " + expected + " but found " + actual);
+        }
+    }
+}